@@ -7,12 +7,27 @@ public class AggregateResourceConsumption {
 	private final ResourceConsumption totals;
 	
 	private final Map<String, ResourceConsumption> machines;
+	
+	private final MachineConsumptionTable table;
 
 	public AggregateResourceConsumption(ResourceConsumption totals,
 			Map<String, ResourceConsumption> machines) {
 		super();
 		this.totals = totals;
 		this.machines = machines;
+		this.table = null;
+	}
+	
+	/**
+	 * Creates an aggregate backed by a columnar table. {@link #getMachines()} returns a read only view of the table.
+	 * @param totals The totals
+	 * @param table The per machine consumption
+	 */
+	public AggregateResourceConsumption(ResourceConsumption totals, MachineConsumptionTable table) {
+		super();
+		this.totals = totals;
+		this.machines = table.asMap();
+		this.table = table;
 	}
 
 	public ResourceConsumption getTotals() {
@@ -22,4 +37,27 @@ public class AggregateResourceConsumption {
 	public Map<String, ResourceConsumption> getMachines() {
 		return machines;
 	}
+	
+	/**
+	 * Returns the number of machines in the aggregate.
+	 * @return
+	 */
+	public int getMachineCount() {
+		return table != null ? table.size() : machines.size();
+	}
+	
+	/**
+	 * Calls a visitor for every machine. If the aggregate is backed by a table, no objects are created.
+	 * @param visitor The visitor
+	 */
+	public void visitMachines(MachineConsumptionTable.Visitor visitor) {
+		if(table != null) {
+			table.visit(visitor);
+			return;
+		}
+		for(Map.Entry<String, ResourceConsumption> entry : machines.entrySet()) {
+			ResourceConsumption rc = entry.getValue();
+			visitor.visit(entry.getKey(), rc.getCpuMHz(), rc.getMemoryKB(), rc.getStorageMB());
+		}
+	}
 }
@@ -0,0 +1,380 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.net.URI;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import com.vmware.vcac.authentication.rest.stubs.Subtenant;
+import com.vmware.vcac.catalog.rest.stubs.CatalogItem;
+import com.vmware.vcac.catalog.rest.stubs.ConsumerResourceOperation;
+import com.vmware.vcac.catalog.rest.stubs.Request;
+import com.vmware.vcac.catalog.rest.stubs.v7_0.CatalogResource;
+import com.vmware.vcac.platform.content.literals.LiteralMap;
+import com.vmware.vcac.reservation.rest.stubs.ReservationPolicy;
+
+/**
+ * An asynchronous version of {@link POCClient}. Every operation runs on an executor and 
+ * returns a CompletableFuture. Cancelling a future interrupts the operation if it's still running.
+ * 
+ * DO NOT USE IN PRODUCTION!
+ */
+public class AsyncPOCClient {
+	private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("vra-async-timer"));
+	
+	private final POCClient client;
+	
+	private final Executor executor;
+	
+	/**
+	 * Creates an asynchronous client running on a default thread pool. The pool has as many threads 
+	 * as the tenant throttle allows concurrent submissions, so a burst of calls is queued rather than
+	 * sent to vRA all at once. Idle threads are stopped after a minute, so a client that's no longer
+	 * used doesn't hold on to any threads.
+	 * @param client The client to wrap.
+	 */
+	public AsyncPOCClient(POCClient client) {
+		this(client, newDefaultExecutor(TenantThrottle.forTenant(client.getTenant()).getLimit()));
+	}
+	
+	/**
+	 * Creates an asynchronous client.
+	 * @param client The client to wrap.
+	 * @param executor The executor to run operations on.
+	 */
+	public AsyncPOCClient(POCClient client, Executor executor) {
+		this.client = client;
+		this.executor = executor;
+	}
+	
+	/**
+	 * Returns the underlying synchronous client.
+	 * @return
+	 */
+	public POCClient getClient() {
+		return client;
+	}
+	
+	/**
+	 * Makes a future fail with a TimeoutException if it hasn't completed within a certain time. The
+	 * operation behind it is cancelled.
+	 * 
+	 * @param future The future to time out
+	 * @param timeout The timeout
+	 * @param unit The unit of the timeout
+	 * @return The same future
+	 */
+	public static <T> CompletableFuture<T> withTimeout(final CompletableFuture<T> future, long timeout, TimeUnit unit) {
+		final Future<?> timeoutTask = timer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				future.completeExceptionally(new TimeoutException("Operation timed out"));
+			}
+		}, timeout, unit);
+		future.whenComplete(new BiConsumer<T, Throwable>() {
+			@Override
+			public void accept(T t, Throwable u) {
+				timeoutTask.cancel(false);
+			}
+		});
+		return future;
+	}
+	
+	public CompletableFuture<Collection<CatalogItem>> getCatalogItems(final String name, final int limit) {
+		return this.supply(new Callable<Collection<CatalogItem>>() {
+			@Override
+			public Collection<CatalogItem> call() {
+				return client.getCatalogItems(name, limit);
+			}
+		});
+	}
+	
+	public CompletableFuture<Collection<CatalogResource>> getCatalogResources(final String name, final int limit) {
+		return this.supply(new Callable<Collection<CatalogResource>>() {
+			@Override
+			public Collection<CatalogResource> call() {
+				return client.getCatalogResources(name, limit);
+			}
+		});
+	}
+	
+	public CompletableFuture<Set<Subtenant>> getBusinessGroups(final String tenantId, final String name, final int limit) {
+		return this.supply(new Callable<Set<Subtenant>>() {
+			@Override
+			public Set<Subtenant> call() {
+				return client.getBusinessGroups(tenantId, name, limit);
+			}
+		});
+	}
+	
+	public CompletableFuture<Collection<ReservationPolicy>> getReservationPolicies(final String name, final int limit) {
+		return this.supply(new Callable<Collection<ReservationPolicy>>() {
+			@Override
+			public Collection<ReservationPolicy> call() {
+				return client.getReservationPolicies(name, limit);
+			}
+		});
+	}
+	
+	public CompletableFuture<Collection<ConsumerResourceOperation>> getDay2Operations(final String resourceId) {
+		return this.supply(new Callable<Collection<ConsumerResourceOperation>>() {
+			@Override
+			public Collection<ConsumerResourceOperation> call() {
+				return client.getDay2Operations(resourceId);
+			}
+		});
+	}
+	
+	public CompletableFuture<ConsumerResourceOperation> getDay2OperationById(final String resourceId, final String opId) {
+		return this.supply(new Callable<ConsumerResourceOperation>() {
+			@Override
+			public ConsumerResourceOperation call() {
+				return client.getDay2OperationById(resourceId, opId);
+			}
+		});
+	}
+	
+	public CompletableFuture<ConsumerResourceOperation> getDay2OperationByName(final String resourceId, final String opName) {
+		return this.supply(new Callable<ConsumerResourceOperation>() {
+			@Override
+			public ConsumerResourceOperation call() {
+				return client.getDay2OperationByName(resourceId, opName);
+			}
+		});
+	}
+	
+	public CompletableFuture<Request> getRequestFromURI(final URI uri) {
+		return this.supply(new Callable<Request>() {
+			@Override
+			public Request call() {
+				return client.getRequestFromURI(uri);
+			}
+		});
+	}
+	
+	public CompletableFuture<URI> requestMachine(final String catalogItemId, final String businessGroupId, final Map<String, MachineConfiguration> config, final Map<String, Object> customProperties) {
+		return this.supply(new Callable<URI>() {
+			@Override
+			public URI call() {
+				return client.requestMachine(catalogItemId, businessGroupId, config, customProperties);
+			}
+		});
+	}
+	
+	/**
+	 * Requests a custom resource. The business group and catalog item are looked up concurrently.
+	 * 
+	 * @param catalogItemName The name of the catalog item
+	 * @param tenantName The tenant name
+	 * @param businessGroupName The business group name
+	 * @param parameters Request parameters
+	 * @return
+	 */
+	public CompletableFuture<URI> requestCustomResource(final String catalogItemName, final String tenantName, final String businessGroupName, final LiteralMap parameters) {
+		final CompletableFuture<URI> result = new CompletableFuture<URI>();
+		final CompletableFuture<Set<Subtenant>> bgs = this.getBusinessGroups(tenantName, businessGroupName, 1);
+		final CompletableFuture<Collection<CatalogItem>> items = this.getCatalogItems(catalogItemName, 1);
+		final AtomicReference<CompletableFuture<URI>> submit = new AtomicReference<CompletableFuture<URI>>();
+		bgs.thenCombine(items, new BiFunction<Set<Subtenant>, Collection<CatalogItem>, CompletableFuture<URI>>() {
+			@Override
+			public CompletableFuture<URI> apply(Set<Subtenant> bgs, Collection<CatalogItem> items) {
+				if(bgs.size() == 0)
+					throw new IllegalArgumentException("Busniess group " + businessGroupName + " not found");
+				if(items.size() == 0)
+					throw new IllegalArgumentException("Catalog item " + catalogItemName + " not found");
+				final Subtenant bg = bgs.iterator().next();
+				final CatalogItem item = items.iterator().next();
+				CompletableFuture<URI> f = AsyncPOCClient.this.supply(new Callable<URI>() {
+					@Override
+					public URI call() {
+						return client.requestCustomResource(item, bg, tenantName, parameters);
+					}
+				});
+				submit.set(f);
+				if(result.isDone())
+					f.cancel(false);
+				return f;
+			}
+		}).thenCompose(Function.<CompletableFuture<URI>>identity()).whenComplete(new BiConsumer<URI, Throwable>() {
+			@Override
+			public void accept(URI uri, Throwable t) {
+				if(t == null)
+					result.complete(uri);
+				else
+					result.completeExceptionally(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+			}
+		});
+		
+		// Cancelling the result cancels whatever is still running, which in turn interrupts it.
+		//
+		result.whenComplete(new BiConsumer<URI, Throwable>() {
+			@Override
+			public void accept(URI uri, Throwable t) {
+				bgs.cancel(false);
+				items.cancel(false);
+				CompletableFuture<URI> f = submit.get();
+				if(f != null)
+					f.cancel(false);
+			}
+		});
+		return result;
+	}
+	
+	public CompletableFuture<URI> requestMachineChange(final String machineId, final MachineConfiguration config, final boolean allowShutdown) {
+		return this.supply(new Callable<URI>() {
+			@Override
+			public URI call() {
+				return client.requestMachineChange(machineId, config, allowShutdown);
+			}
+		});
+	}
+	
+	public CompletableFuture<URI> requestPropertyChange(final String machineId, final Map<String, String> properties) {
+		return this.supply(new Callable<URI>() {
+			@Override
+			public URI call() throws Exception {
+				return client.requestPropertyChange(machineId, properties);
+			}
+		});
+	}
+	
+	public CompletableFuture<URI> submitCustomRequest(final String machineId, final String operationName, final Map<String, Object> rqData) {
+		return this.supply(new Callable<URI>() {
+			@Override
+			public URI call() {
+				return client.submitCustomRequest(machineId, operationName, rqData);
+			}
+		});
+	}
+	
+	public CompletableFuture<Boolean> isChangePending(final String machineId) {
+		return this.supply(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return client.isChangePending(machineId);
+			}
+		});
+	}
+	
+	public CompletableFuture<URI> finalizeMachineChange(final String machineId) {
+		return this.supply(new Callable<URI>() {
+			@Override
+			public URI call() {
+				return client.finalizeMachineChange(machineId);
+			}
+		});
+	}
+	
+	public CompletableFuture<URI> requestMachineReprovision(final String machineId) {
+		return this.supply(new Callable<URI>() {
+			@Override
+			public URI call() {
+				return client.requestMachineReprovision(machineId);
+			}
+		});
+	}
+	
+	public CompletableFuture<URI> destroyMachine(final String machineId) {
+		return this.supply(new Callable<URI>() {
+			@Override
+			public URI call() {
+				return client.destroyMachine(machineId);
+			}
+		});
+	}
+	
+	public CompletableFuture<Map<String, Object>> getMachineDetails(final String machineId) {
+		return this.supply(new Callable<Map<String, Object>>() {
+			@Override
+			public Map<String, Object> call() {
+				return client.getMachineDetails(machineId);
+			}
+		});
+	}
+	
+	public CompletableFuture<MachineDetails> getMachineDetails(final String machineId, final String... fields) {
+		return this.supply(new Callable<MachineDetails>() {
+			@Override
+			public MachineDetails call() {
+				return client.getMachineDetails(machineId, fields);
+			}
+		});
+	}
+	
+	public CompletableFuture<URI> requestMigration(String vCenterHost, String tenant, String businessGroup, String username, String password, String sourceName, String targetName, String folder, String cluster, String storage, String network, int cpu, int memory) {
+		LiteralMap parameters = client.createMigrationParameters(vCenterHost, username, password, sourceName, targetName, folder, cluster, storage, network, cpu, memory);
+		return this.requestCustomResource(POCClient.MIGRATION_CATALOG_ITEM, tenant, businessGroup, parameters);
+	}
+	
+	/**
+	 * Runs a task on the executor. Cancelling the returned future interrupts the task.
+	 * 
+	 * @param task The task to run
+	 * @return A future holding the result of the task
+	 */
+	protected <T> CompletableFuture<T> supply(Callable<T> task) {
+		final CompletableFuture<T> result = new CompletableFuture<T>();
+		final FutureTask<T> runner = new FutureTask<T>(task) {
+			@Override
+			protected void done() {
+				try {
+					result.complete(this.get());
+				} catch(ExecutionException e) {
+					result.completeExceptionally(e.getCause());
+				} catch(CancellationException e) {
+					result.cancel(false);
+				} catch(InterruptedException e) {
+					// Can't happen. We're done.
+					//
+					result.completeExceptionally(e);
+				}
+			}
+		};
+		result.whenComplete(new BiConsumer<T, Throwable>() {
+			@Override
+			public void accept(T t, Throwable u) {
+				// Completed from the outside (cancelled or timed out). Stop the task.
+				//
+				if(!runner.isDone())
+					runner.cancel(true);
+			}
+		});
+		executor.execute(runner);
+		return result;
+	}
+	
+	private static Executor newDefaultExecutor(int threads) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), 
+				new DaemonThreadFactory("vra-async"));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+}
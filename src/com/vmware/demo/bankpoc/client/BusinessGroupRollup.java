@@ -0,0 +1,106 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The consumption of all machines owned by a business group, as calculated by the {@link ChargebackEngine}.
+ * 
+ * The per machine consumption is either held in memory or, for large business groups, in a number of
+ * {@link ConsumptionSnapshot} files that are read when the machines are visited.
+ */
+public class BusinessGroupRollup {
+	private final String businessGroupId;
+	
+	private final String businessGroupName;
+	
+	private final ResourceConsumption totals;
+	
+	private final int machineCount;
+	
+	private final int unmatchedCount;
+	
+	private final MachineConsumptionTable machines;
+	
+	private final List<File> spillFiles;
+
+	public BusinessGroupRollup(String businessGroupId, String businessGroupName, ResourceConsumption totals, int machineCount,
+			int unmatchedCount, MachineConsumptionTable machines, List<File> spillFiles) {
+		super();
+		this.businessGroupId = businessGroupId;
+		this.businessGroupName = businessGroupName;
+		this.totals = totals;
+		this.machineCount = machineCount;
+		this.unmatchedCount = unmatchedCount;
+		this.machines = machines;
+		this.spillFiles = spillFiles;
+	}
+
+	public String getBusinessGroupId() {
+		return businessGroupId;
+	}
+
+	public String getBusinessGroupName() {
+		return businessGroupName;
+	}
+
+	public ResourceConsumption getTotals() {
+		return totals;
+	}
+
+	/**
+	 * Returns the number of machines that had consumption data.
+	 * @return
+	 */
+	public int getMachineCount() {
+		return machineCount;
+	}
+
+	/**
+	 * Returns the number of machines in vRA that vR Ops had no data for.
+	 * @return
+	 */
+	public int getUnmatchedCount() {
+		return unmatchedCount;
+	}
+	
+	/**
+	 * Returns true if the per machine consumption was written to disk.
+	 * @return
+	 */
+	public boolean isSpilled() {
+		return !spillFiles.isEmpty();
+	}
+	
+	/**
+	 * Returns the files holding the per machine consumption that was written to disk. It's up to the
+	 * caller to delete them when they're no longer needed.
+	 * @return
+	 */
+	public List<File> getSpillFiles() {
+		return spillFiles;
+	}
+
+	/**
+	 * Calls a visitor for every machine, reading any spilled machines from disk. Machines that share a name
+	 * are visited as one row, with their consumption added up, unless they were written to different files.
+	 * @param visitor The visitor
+	 * @throws IOException
+	 */
+	public void visitMachines(MachineConsumptionTable.Visitor visitor) throws IOException {
+		for(File file : spillFiles)
+			ConsumptionSnapshot.open(file).visitAll(visitor);
+		machines.visit(visitor);
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+/**
+ * A point in time snapshot of the statistics of an {@link ExpiringCache}.
+ */
+public class CacheStats {
+	private final long hitCount;
+
+	private final long missCount;
+
+	private final long loadCount;
+
+	private final long loadFailureCount;
+
+	private final long totalLoadTimeNanos;
+
+	private final long evictionCount;
+
+	private final long refreshCount;
+
+	private final int size;
+
+	private final long weight;
+
+	public CacheStats(long hitCount, long missCount, long loadCount, long loadFailureCount,
+			long totalLoadTimeNanos, long evictionCount, long refreshCount, int size, long weight) {
+		super();
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.loadCount = loadCount;
+		this.loadFailureCount = loadFailureCount;
+		this.totalLoadTimeNanos = totalLoadTimeNanos;
+		this.evictionCount = evictionCount;
+		this.refreshCount = refreshCount;
+		this.size = size;
+		this.weight = weight;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	public long getLoadCount() {
+		return loadCount;
+	}
+
+	public long getLoadFailureCount() {
+		return loadFailureCount;
+	}
+
+	public long getTotalLoadTimeNanos() {
+		return totalLoadTimeNanos;
+	}
+
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	public long getRefreshCount() {
+		return refreshCount;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public long getWeight() {
+		return weight;
+	}
+
+	/**
+	 * Returns the ratio of lookups that were served from the cache.
+	 * @return The hit rate, or 1.0 if no lookups have been made.
+	 */
+	public double getHitRate() {
+		long total = hitCount + missCount;
+		return total == 0 ? 1.0 : (double) hitCount / total;
+	}
+
+	/**
+	 * Returns the average time spent loading a value that wasn't in the cache.
+	 * @return Average load time in nanoseconds, or 0 if nothing has been loaded.
+	 */
+	public double getAverageLoadPenaltyNanos() {
+		long total = loadCount + loadFailureCount;
+		return total == 0 ? 0.0 : (double) totalLoadTimeNanos / total;
+	}
+
+	@Override
+	public String toString() {
+		return "hits: " + hitCount + " misses: " + missCount + " loads: " + loadCount + " failures: " + loadFailureCount
+				+ " evictions: " + evictionCount + " refreshes: " + refreshCount + " size: " + size + " weight: " + weight
+				+ " hit rate: " + this.getHitRate()
+				+ " avg load ms: " + this.getAverageLoadPenaltyNanos() / 1000000.0;
+	}
+}
@@ -0,0 +1,240 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.vmware.vcac.catalog.rest.stubs.v7_0.CatalogResource;
+import com.vmware.vcac.authentication.rest.stubs.Subtenant;
+
+/**
+ * Joins the machines in vRA with their consumption in vR Ops and rolls the result up per business group.
+ * 
+ * Every business group is a partition that's processed on its own, and a few partitions are processed at
+ * a time. Within a partition, the machines are read from vRA one page at a time and each page is looked 
+ * up in vR Ops in bulk while the next page is being fetched. The vR Ops results are joined with the page by 
+ * machine name. Every machine in vRA counts once, even if it shares its name with another machine: it's
+ * counted as matched or unmatched and its consumption goes into the totals. Machines that share a name
+ * are kept in a single row, holding the sum of their consumption. A rollup is handed to the listener as soon as its business group is done, so the caller 
+ * can start reporting before the whole tenant has been processed.
+ * 
+ * To keep memory use bounded, the per machine consumption of a business group is written to snapshot 
+ * files whenever more than a set number of machines have been collected. Every run gets its own directory 
+ * under the spill directory, so concurrent runs never share files. The spill files of a business group 
+ * that fails are deleted, while those of completed rollups belong to whoever receives the rollup. A run 
+ * directory that ends up empty is removed when the run completes.
+ */
+public class ChargebackEngine {
+	/**
+	 * Receives rollups as they are completed. Calls are never made concurrently.
+	 */
+	public interface RollupListener {
+		void onRollup(BusinessGroupRollup rollup);
+	}
+	
+	private static final String MACHINE_TYPE = "Infrastructure.Virtual";
+	
+	private static final int PAGE_SIZE = 500;
+	
+	private static final int DEFAULT_PARALLELISM = 4;
+	
+	private static final int DEFAULT_MAX_ROWS_IN_MEMORY = 50000;
+	
+	private final POCClient vra;
+	
+	private final VROPSClient vrops;
+	
+	private final File spillDirectory;
+	
+	private final int maxRowsInMemory;
+	
+	private final ExecutorService executor;
+	
+	public ChargebackEngine(POCClient vra, VROPSClient vrops, File spillDirectory) {
+		this(vra, vrops, spillDirectory, DEFAULT_PARALLELISM, DEFAULT_MAX_ROWS_IN_MEMORY);
+	}
+	
+	/**
+	 * Creates a new chargeback engine.
+	 * @param vra The vRA client
+	 * @param vrops The vR Ops client
+	 * @param spillDirectory Where to write per machine consumption for large business groups.
+	 * @param parallelism The number of business groups to process at a time.
+	 * @param maxRowsInMemory The number of machines to keep in memory per business group before writing them to disk.
+	 */
+	public ChargebackEngine(POCClient vra, VROPSClient vrops, File spillDirectory, int parallelism, int maxRowsInMemory) {
+		this.vra = vra;
+		this.vrops = vrops;
+		this.spillDirectory = spillDirectory;
+		this.maxRowsInMemory = maxRowsInMemory;
+		executor = Executors.newFixedThreadPool(parallelism, new DaemonThreadFactory("chargeback"));
+	}
+	
+	/**
+	 * Calculates the rollups for all business groups in a tenant. 
+	 * @param tenantId The tenant
+	 * @param listener Receives each rollup as it's completed.
+	 * @return A future that completes with the number of business groups processed when all of them are done.
+	 */
+	public CompletableFuture<Integer> run(String tenantId, final RollupListener listener) {
+		final File runDirectory;
+		try {
+			runDirectory = Files.createTempDirectory(spillDirectory.toPath(), "chargeback-").toFile();
+		} catch(IOException e) {
+			throw new UncheckedIOException("Unable to create a run directory in " + spillDirectory, e);
+		}
+		List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+		PagedIterator<Subtenant> groups = vra.iterateBusinessGroups(tenantId, null, PAGE_SIZE);
+		try {
+			while(groups.hasNext()) {
+				final Subtenant group = groups.next();
+				futures.add(CompletableFuture.supplyAsync(new Supplier<Void>() {
+					@Override
+					public Void get() {
+						BusinessGroupRollup rollup = ChargebackEngine.this.rollup(group, runDirectory);
+						synchronized(listener) {
+							listener.onRollup(rollup);
+						}
+						return null;
+					}
+				}, executor));
+			}
+		} finally {
+			groups.close();
+		}
+		final int count = futures.size();
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).whenComplete(new BiConsumer<Void, Throwable>() {
+			@Override
+			public void accept(Void v, Throwable t) {
+				// Only succeeds if nothing was spilled
+				//
+				runDirectory.delete();
+			}
+		}).thenApply(new Function<Void, Integer>() {
+			@Override
+			public Integer apply(Void v) {
+				return count;
+			}
+		});
+	}
+	
+	/**
+	 * Calculates the rollups for all business groups in a tenant and waits for them.
+	 * @param tenantId The tenant
+	 * @return The rollups, in the order they were completed.
+	 */
+	public List<BusinessGroupRollup> runAndWait(String tenantId) {
+		final List<BusinessGroupRollup> result = new ArrayList<BusinessGroupRollup>();
+		this.run(tenantId, new RollupListener() {
+			@Override
+			public void onRollup(BusinessGroupRollup rollup) {
+				result.add(rollup);
+			}
+		}).join();
+		return result;
+	}
+	
+	/**
+	 * Stops the worker threads.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+	
+	/**
+	 * Calculates the rollup for a business group. If it fails, the files it has spilled so far are deleted.
+	 */
+	private BusinessGroupRollup rollup(Subtenant group, File runDirectory) {
+		double totCpu = 0.0;
+		double totMem = 0.0;
+		double totStorage = 0.0;
+		int matched = 0;
+		int unmatched = 0;
+		MachineConsumptionTable machines = new MachineConsumptionTable();
+		List<File> spillFiles = new ArrayList<File>();
+		boolean done = false;
+		PagedIterator<CatalogResource> resources = vra.iterateCatalogResourcesByBusinessGroup(group.getId(), PAGE_SIZE);
+		try {
+			List<String> names = new ArrayList<String>(PAGE_SIZE);
+			while(resources.hasNext() || !names.isEmpty()) {
+				// Collect a page worth of machine names. The iterator prefetches the next page
+				// while we're waiting for vR Ops.
+				//
+				while(resources.hasNext() && names.size() < PAGE_SIZE) {
+					CatalogResource resource = resources.next();
+					if(resource.getResourceTypeRef() != null && MACHINE_TYPE.equals(resource.getResourceTypeRef().getId()))
+						names.add(resource.getName());
+				}
+				if(names.isEmpty())
+					continue;
+				
+				// Join with the consumption data by name
+				//
+				Map<String, ResourceConsumption> consumption = vrops.getVMMetricsByNames(names);
+				for(String name : names) {
+					ResourceConsumption rc = consumption.get(name);
+					if(rc == null) {
+						++unmatched;
+						continue;
+					}
+					++matched;
+					machines.add(name, rc.getCpuMHz(), rc.getMemoryKB(), rc.getStorageMB());
+				}
+				names.clear();
+				if(machines.size() >= maxRowsInMemory) {
+					ResourceConsumption chunk = machines.getTotals();
+					totCpu += chunk.getCpuMHz();
+					totMem += chunk.getMemoryKB();
+					totStorage += chunk.getStorageMB();
+					spillFiles.add(this.spill(group, machines, runDirectory, spillFiles.size()));
+					machines = new MachineConsumptionTable();
+				}
+			}
+			ResourceConsumption chunk = machines.getTotals();
+			totCpu += chunk.getCpuMHz();
+			totMem += chunk.getMemoryKB();
+			totStorage += chunk.getStorageMB();
+			done = true;
+		} finally {
+			resources.close();
+			if(!done) {
+				for(File file : spillFiles)
+					file.delete();
+			}
+		}
+		return new BusinessGroupRollup(group.getId(), group.getName(), new ResourceConsumption(totCpu, totMem, totStorage), matched, 
+				unmatched, machines, Collections.unmodifiableList(spillFiles));
+	}
+	
+	private File spill(Subtenant group, MachineConsumptionTable machines, File runDirectory, int chunk) {
+		File file = new File(runDirectory, "chargeback-" + group.getId() + "-" + chunk + ".bin");
+		try {
+			ConsumptionSnapshot.write(file, Collections.singletonMap(group.getName(), 
+					new AggregateResourceConsumption(machines.getTotals(), machines)));
+		} catch(IOException e) {
+			throw new UncheckedIOException("Unable to spill " + group.getName() + " to " + file, e);
+		}
+		return file;
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+/**
+ * Top consumers and consumption percentiles for a set of machines, calculated in a single pass
+ * and in constant memory. Feed it machines through {@link #visit(String, double, double, double)},
+ * e.g. from {@link VROPSClient#visitGroup(String, String, MachineConsumptionTable.Visitor)} or 
+ * {@link AggregateResourceConsumption#visitMachines(MachineConsumptionTable.Visitor)}. Instances
+ * for different groups can be merged to get the figures for all of them. Not thread safe.
+ */
+public class ConsumptionAnalytics implements MachineConsumptionTable.Visitor {
+	private final TopK topCpu;
+	
+	private final TopK topMemory;
+	
+	private final TopK topStorage;
+	
+	private final QuantileSketch cpu = new QuantileSketch();
+	
+	private final QuantileSketch memory = new QuantileSketch();
+	
+	private final QuantileSketch storage = new QuantileSketch();
+	
+	/**
+	 * Creates a new instance.
+	 * @param k The number of top consumers to keep for each metric.
+	 */
+	public ConsumptionAnalytics(int k) {
+		topCpu = new TopK(k);
+		topMemory = new TopK(k);
+		topStorage = new TopK(k);
+	}
+
+	@Override
+	public void visit(String name, double cpuMHz, double memoryKB, double storageMB) {
+		topCpu.offer(name, cpuMHz);
+		topMemory.offer(name, memoryKB);
+		topStorage.offer(name, storageMB);
+		cpu.add(cpuMHz);
+		memory.add(memoryKB);
+		storage.add(storageMB);
+	}
+	
+	/**
+	 * Adds the figures from another instance to this one.
+	 * @param other The instance to merge
+	 */
+	public void merge(ConsumptionAnalytics other) {
+		topCpu.merge(other.topCpu);
+		topMemory.merge(other.topMemory);
+		topStorage.merge(other.topStorage);
+		cpu.merge(other.cpu);
+		memory.merge(other.memory);
+		storage.merge(other.storage);
+	}
+
+	public TopK getTopCpu() {
+		return topCpu;
+	}
+
+	public TopK getTopMemory() {
+		return topMemory;
+	}
+
+	public TopK getTopStorage() {
+		return topStorage;
+	}
+
+	public QuantileSketch getCpu() {
+		return cpu;
+	}
+
+	public QuantileSketch getMemory() {
+		return memory;
+	}
+
+	public QuantileSketch getStorage() {
+		return storage;
+	}
+}
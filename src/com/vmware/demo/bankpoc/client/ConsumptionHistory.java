@@ -0,0 +1,41 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+/**
+ * The consumption history of a single VM over a period of time.
+ */
+public class ConsumptionHistory {
+	private final MetricSeries cpuMHz;
+	
+	private final MetricSeries memoryKB;
+	
+	private final MetricSeries storageMB;
+
+	public ConsumptionHistory(MetricSeries cpuMHz, MetricSeries memoryKB, MetricSeries storageMB) {
+		super();
+		this.cpuMHz = cpuMHz;
+		this.memoryKB = memoryKB;
+		this.storageMB = storageMB;
+	}
+
+	public MetricSeries getCpuMHz() {
+		return cpuMHz;
+	}
+
+	public MetricSeries getMemoryKB() {
+		return memoryKB;
+	}
+
+	public MetricSeries getStorageMB() {
+		return storageMB;
+	}
+}
@@ -0,0 +1,431 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, binary snapshot of the consumption of a number of groups, e.g. the output of a nightly run.
+ * 
+ * The file consists of a fixed size header, a table of groups with their totals, one fixed width column
+ * per metric with a row per machine, and a table of all group and machine names stored once each. A
+ * snapshot is opened by mapping the file into memory and checking that its layout is consistent, which
+ * only touches the group table, the string offsets and the name column. The other columns are read
+ * directly from the mapped buffer. Nothing is deserialized except the names, which are decoded
+ * the first time they are asked for. Snapshots are written to a temporary file that then replaces
+ * any existing file, so a reader never sees a half written snapshot.
+ * 
+ * A snapshot must be smaller than 2GB, which is enough for tens of millions of machines.
+ */
+public class ConsumptionSnapshot {
+	private static final int MAGIC = 0x56524343; // "VRCC"
+	
+	private static final int VERSION = 1;
+	
+	private static final int HEADER_LENGTH = 32;
+	
+	private static final int GROUP_LENGTH = 40;
+	
+	private final ByteBuffer buffer;
+	
+	private final long created;
+	
+	private final int groupCount;
+	
+	private final int rowCount;
+	
+	private final int stringCount;
+	
+	private final int groupsOffset;
+	
+	private final int namesOffset;
+	
+	private final int cpuOffset;
+	
+	private final int memoryOffset;
+	
+	private final int storageOffset;
+	
+	private final int stringOffsetsOffset;
+	
+	private final int stringsOffset;
+	
+	private final String[] strings;
+	
+	private ConsumptionSnapshot(ByteBuffer buffer, long created, int groupCount, int rowCount, int stringCount) {
+		this.buffer = buffer;
+		this.created = created;
+		this.groupCount = groupCount;
+		this.rowCount = rowCount;
+		this.stringCount = stringCount;
+		groupsOffset = HEADER_LENGTH;
+		namesOffset = groupsOffset + groupCount * GROUP_LENGTH;
+		cpuOffset = namesOffset + (int) align(rowCount * 4);
+		memoryOffset = cpuOffset + rowCount * 8;
+		storageOffset = memoryOffset + rowCount * 8;
+		stringOffsetsOffset = storageOffset + rowCount * 8;
+		stringsOffset = stringOffsetsOffset + (stringCount + 1) * 4;
+		strings = new String[stringCount];
+	}
+	
+	/**
+	 * Writes a snapshot.
+	 * @param file The file to write to
+	 * @param groups The consumption to write, by group name
+	 * @throws IOException
+	 */
+	public static void write(File file, Map<String, AggregateResourceConsumption> groups) throws IOException {
+		// Build the string table and count the rows
+		//
+		final Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+		final List<byte[]> strings = new ArrayList<byte[]>();
+		final long[] stringBytes = new long[1];
+		long rows = 0;
+		for(Map.Entry<String, AggregateResourceConsumption> group : groups.entrySet()) {
+			intern(group.getKey(), stringIndex, strings, stringBytes);
+			rows += group.getValue().getMachineCount();
+			group.getValue().visitMachines(new MachineConsumptionTable.Visitor() {
+				@Override
+				public void visit(String name, double cpuMHz, double memoryKB, double storageMB) {
+					intern(name, stringIndex, strings, stringBytes);
+				}
+			});
+		}
+		long length = getStringsOffset(groups.size(), rows, strings.size()) + stringBytes[0];
+		if(length > Integer.MAX_VALUE)
+			throw new IOException("Snapshot too large: " + length + " bytes");
+		ConsumptionSnapshot layout = new ConsumptionSnapshot(null, 0, groups.size(), (int) rows, strings.size());
+		
+		File tmp = new File(file.getPath() + ".tmp");
+		boolean written = false;
+		try {
+			writeTo(tmp, layout, length, groups, stringIndex, strings);
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			written = true;
+		} finally {
+			if(!written)
+				tmp.delete();
+		}
+	}
+	
+	private static void writeTo(File tmp, final ConsumptionSnapshot layout, long length, Map<String, AggregateResourceConsumption> groups, 
+			final Map<String, Integer> stringIndex, List<byte[]> strings) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+		try {
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			final MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+			out.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).putInt(groups.size()).putInt(layout.rowCount).putInt(strings.size()).putInt(0);
+			
+			// Groups and columns
+			//
+			final int[] row = new int[1];
+			int groupPos = layout.groupsOffset;
+			for(Map.Entry<String, AggregateResourceConsumption> group : groups.entrySet()) {
+				ResourceConsumption totals = group.getValue().getTotals();
+				out.putInt(groupPos, stringIndex.get(group.getKey()));
+				out.putInt(groupPos + 4, row[0]);
+				out.putInt(groupPos + 8, group.getValue().getMachineCount());
+				out.putDouble(groupPos + 16, totals.getCpuMHz());
+				out.putDouble(groupPos + 24, totals.getMemoryKB());
+				out.putDouble(groupPos + 32, totals.getStorageMB());
+				groupPos += GROUP_LENGTH;
+				group.getValue().visitMachines(new MachineConsumptionTable.Visitor() {
+					@Override
+					public void visit(String name, double cpuMHz, double memoryKB, double storageMB) {
+						int r = row[0]++;
+						out.putInt(layout.namesOffset + r * 4, stringIndex.get(name));
+						out.putDouble(layout.cpuOffset + r * 8, cpuMHz);
+						out.putDouble(layout.memoryOffset + r * 8, memoryKB);
+						out.putDouble(layout.storageOffset + r * 8, storageMB);
+					}
+				});
+			}
+			
+			// String table
+			//
+			out.position(layout.stringOffsetsOffset);
+			int offset = 0;
+			for(byte[] s : strings) {
+				out.putInt(offset);
+				offset += s.length;
+			}
+			out.putInt(offset);
+			for(byte[] s : strings)
+				out.put(s);
+			out.force();
+		} finally {
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Opens a snapshot.
+	 * @param file The file to open
+	 * @return The snapshot
+	 * @throws IOException If the file can't be read, isn't a snapshot of a known version or is corrupt.
+	 */
+	public static ConsumptionSnapshot open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if(channel.size() < HEADER_LENGTH || channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Not a consumption snapshot: " + file);
+			
+			// The mapping stays valid after the file is closed.
+			//
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(buffer.getInt(0) != MAGIC)
+				throw new IOException("Not a consumption snapshot: " + file);
+			if(buffer.getInt(4) != VERSION)
+				throw new IOException("Unsupported snapshot version " + buffer.getInt(4) + ": " + file);
+			int groupCount = buffer.getInt(16);
+			int rowCount = buffer.getInt(20);
+			int stringCount = buffer.getInt(24);
+			if(groupCount < 0 || rowCount < 0 || stringCount < 0 || getStringsOffset(groupCount, rowCount, stringCount) > channel.size())
+				throw new IOException("Truncated or corrupt consumption snapshot: " + file);
+			ConsumptionSnapshot snapshot = new ConsumptionSnapshot(buffer, buffer.getLong(8), groupCount, rowCount, stringCount);
+			if(!snapshot.isConsistent())
+				throw new IOException("Truncated or corrupt consumption snapshot: " + file);
+			return snapshot;
+		} finally {
+			raf.close();
+		}
+	}
+	
+	/**
+	 * Returns the time the snapshot was written, in milliseconds since the epoch.
+	 * @return
+	 */
+	public long getCreated() {
+		return created;
+	}
+	
+	public int getGroupCount() {
+		return groupCount;
+	}
+	
+	/**
+	 * Returns the total number of machine rows in all groups.
+	 * @return
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+	
+	public String getGroupName(int group) {
+		return this.getString(buffer.getInt(this.groupPos(group)));
+	}
+	
+	/**
+	 * Returns the index of a group.
+	 * @param name The group name
+	 * @return The index, or -1 if there's no such group.
+	 */
+	public int findGroup(String name) {
+		for(int i = 0; i < groupCount; ++i) {
+			if(this.getGroupName(i).equals(name))
+				return i;
+		}
+		return -1;
+	}
+	
+	public ResourceConsumption getGroupTotals(int group) {
+		int pos = this.groupPos(group);
+		return new ResourceConsumption(buffer.getDouble(pos + 16), buffer.getDouble(pos + 24), buffer.getDouble(pos + 32));
+	}
+	
+	public int getGroupFirstRow(int group) {
+		return buffer.getInt(this.groupPos(group) + 4);
+	}
+	
+	public int getGroupRowCount(int group) {
+		return buffer.getInt(this.groupPos(group) + 8);
+	}
+	
+	public String getMachineName(int row) {
+		return this.getString(buffer.getInt(namesOffset + this.check(row) * 4));
+	}
+	
+	public double getCpuMHz(int row) {
+		return buffer.getDouble(cpuOffset + this.check(row) * 8);
+	}
+	
+	public double getMemoryKB(int row) {
+		return buffer.getDouble(memoryOffset + this.check(row) * 8);
+	}
+	
+	public double getStorageMB(int row) {
+		return buffer.getDouble(storageOffset + this.check(row) * 8);
+	}
+	
+	/**
+	 * Calls a visitor for every machine in a group.
+	 * @param group The group index
+	 * @param visitor The visitor
+	 */
+	public void visitGroup(int group, MachineConsumptionTable.Visitor visitor) {
+		int first = this.getGroupFirstRow(group);
+		this.visitRows(first, first + this.getGroupRowCount(group), visitor);
+	}
+	
+	/**
+	 * Calls a visitor for every machine in the snapshot.
+	 * @param visitor The visitor
+	 */
+	public void visitAll(MachineConsumptionTable.Visitor visitor) {
+		this.visitRows(0, rowCount, visitor);
+	}
+	
+	/**
+	 * Returns the grand total of all groups.
+	 * @return
+	 */
+	public ResourceConsumption getTotals() {
+		double cpu = 0.0;
+		double memory = 0.0;
+		double storage = 0.0;
+		for(int i = 0; i < groupCount; ++i) {
+			int pos = this.groupPos(i);
+			cpu += buffer.getDouble(pos + 16);
+			memory += buffer.getDouble(pos + 24);
+			storage += buffer.getDouble(pos + 32);
+		}
+		return new ResourceConsumption(cpu, memory, storage);
+	}
+	
+	/**
+	 * Loads a group into memory.
+	 * @param group The group index
+	 * @return
+	 */
+	public AggregateResourceConsumption toAggregate(int group) {
+		final MachineConsumptionTable table = new MachineConsumptionTable(this.getGroupRowCount(group));
+		this.visitGroup(group, new MachineConsumptionTable.Visitor() {
+			@Override
+			public void visit(String name, double cpuMHz, double memoryKB, double storageMB) {
+				table.put(name, cpuMHz, memoryKB, storageMB);
+			}
+		});
+		return new AggregateResourceConsumption(this.getGroupTotals(group), table);
+	}
+	
+	/**
+	 * Loads all groups into memory.
+	 * @return The consumption by group name.
+	 */
+	public Map<String, AggregateResourceConsumption> toMap() {
+		Map<String, AggregateResourceConsumption> result = new LinkedHashMap<String, AggregateResourceConsumption>(groupCount * 2);
+		for(int i = 0; i < groupCount; ++i)
+			result.put(this.getGroupName(i), this.toAggregate(i));
+		return result;
+	}
+	
+	/**
+	 * Checks that every index and offset in the file points inside it, so that the accessors can trust them.
+	 */
+	private boolean isConsistent() {
+		int previous = 0;
+		for(int i = 0; i <= stringCount; ++i) {
+			int offset = buffer.getInt(stringOffsetsOffset + i * 4);
+			if(offset < previous || (i == 0 && offset != 0))
+				return false;
+			previous = offset;
+		}
+		if((long) stringsOffset + previous != buffer.capacity())
+			return false;
+		for(int r = 0; r < rowCount; ++r) {
+			int name = buffer.getInt(namesOffset + r * 4);
+			if(name < 0 || name >= stringCount)
+				return false;
+		}
+		for(int g = 0; g < groupCount; ++g) {
+			int pos = groupsOffset + g * GROUP_LENGTH;
+			int name = buffer.getInt(pos);
+			int first = buffer.getInt(pos + 4);
+			int count = buffer.getInt(pos + 8);
+			if(name < 0 || name >= stringCount || first < 0 || count < 0 || (long) first + count > rowCount)
+				return false;
+		}
+		return true;
+	}
+	
+	private void visitRows(int from, int to, MachineConsumptionTable.Visitor visitor) {
+		for(int r = from; r < to; ++r) {
+			visitor.visit(this.getString(buffer.getInt(namesOffset + r * 4)), buffer.getDouble(cpuOffset + r * 8), 
+					buffer.getDouble(memoryOffset + r * 8), buffer.getDouble(storageOffset + r * 8));
+		}
+	}
+	
+	/**
+	 * Decodes a string from the string table the first time it's needed. Concurrent callers may 
+	 * decode the same string twice, which is harmless.
+	 */
+	private String getString(int index) {
+		String s = strings[index];
+		if(s == null) {
+			int start = buffer.getInt(stringOffsetsOffset + index * 4);
+			int end = buffer.getInt(stringOffsetsOffset + (index + 1) * 4);
+			byte[] bytes = new byte[end - start];
+			ByteBuffer slice = buffer.duplicate();
+			slice.position(stringsOffset + start);
+			slice.get(bytes);
+			s = new String(bytes, StandardCharsets.UTF_8);
+			strings[index] = s;
+		}
+		return s;
+	}
+	
+	private int groupPos(int group) {
+		if(group < 0 || group >= groupCount)
+			throw new IndexOutOfBoundsException("Group: " + group + " count: " + groupCount);
+		return groupsOffset + group * GROUP_LENGTH;
+	}
+	
+	private int check(int row) {
+		if(row < 0 || row >= rowCount)
+			throw new IndexOutOfBoundsException("Row: " + row + " count: " + rowCount);
+		return row;
+	}
+	
+	/**
+	 * Computes where the string data starts, in <code>long</code> so that large counts can't overflow.
+	 */
+	private static long getStringsOffset(long groupCount, long rowCount, long stringCount) {
+		return HEADER_LENGTH + groupCount * GROUP_LENGTH + align(rowCount * 4) + rowCount * 8 * 3 + (stringCount + 1) * 4;
+	}
+	
+	private static void intern(String s, Map<String, Integer> index, List<byte[]> strings, long[] length) {
+		if(index.containsKey(s))
+			return;
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		index.put(s, strings.size());
+		strings.add(bytes);
+		length[0] += bytes.length;
+	}
+	
+	private static long align(long n) {
+		return (n + 7) & ~7;
+	}
+}
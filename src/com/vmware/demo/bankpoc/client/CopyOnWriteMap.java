@@ -0,0 +1,138 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A writable view of an immutable, nested map structure, such as the data of a request template.
+ *
+ * Nothing is copied until it's needed. A level of the tree is copied (shallowly) the first time
+ * it's written to or a nested map or list inside it is accessed, and nested maps are in turn
+ * wrapped in new views. Thus, writing a single value deep inside the tree only copies the levels
+ * along the path to that value. The underlying map is never modified.
+ */
+public class CopyOnWriteMap extends AbstractMap<String, Object> {
+	private final Map<String, Object> base;
+
+	private Map<String, Object> local;
+
+	/**
+	 * Creates a new view.
+	 * @param base The map to wrap. Should be frozen using {@link #freeze(Object)}.
+	 */
+	public CopyOnWriteMap(Map<String, Object> base) {
+		this.base = base;
+	}
+
+	/**
+	 * Returns a deep, unmodifiable copy of a structure of maps and lists.
+	 * @param o The object to freeze
+	 * @return A frozen copy of the object, or the object itself if it's neither a map nor a list.
+	 */
+	public static Object freeze(Object o) {
+		if(o instanceof Map) {
+			// Request data is parsed from JSON, so map keys are always strings
+			@SuppressWarnings("unchecked")
+			Map<String, Object> source = (Map<String, Object>) o;
+			Map<String, Object> copy = new LinkedHashMap<String, Object>(source.size() * 2);
+			for(Map.Entry<String, Object> entry : source.entrySet())
+				copy.put(entry.getKey(), freeze(entry.getValue()));
+			return Collections.unmodifiableMap(copy);
+		}
+		if(o instanceof List) {
+			// Only read from, so the element type doesn't matter
+			@SuppressWarnings("unchecked")
+			List<Object> source = (List<Object>) o;
+			List<Object> copy = new ArrayList<Object>(source.size());
+			for(Object item : source)
+				copy.add(freeze(item));
+			return Collections.unmodifiableList(copy);
+		}
+		return o;
+	}
+
+	@Override
+	public Object get(Object key) {
+		if(local == null) {
+			Object value = base.get(key);
+			if(!(value instanceof Map || value instanceof List))
+				return value;
+			this.materialize();
+		}
+		return local.get(key);
+	}
+
+	@Override
+	public Object put(String key, Object value) {
+		this.materialize();
+		return local.put(key, value);
+	}
+
+	@Override
+	public Object remove(Object key) {
+		this.materialize();
+		return local.remove(key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return local != null ? local.containsKey(key) : base.containsKey(key);
+	}
+
+	@Override
+	public int size() {
+		return local != null ? local.size() : base.size();
+	}
+
+	/**
+	 * Returns the entries of this map. If nothing has been written to this level, the entries
+	 * of the underlying map are returned and they are read only.
+	 */
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet() {
+		return local != null ? local.entrySet() : base.entrySet();
+	}
+
+	private void materialize() {
+		if(local != null)
+			return;
+		Map<String, Object> copy = new LinkedHashMap<String, Object>(base.size() * 2);
+		for(Map.Entry<String, Object> entry : base.entrySet())
+			copy.put(entry.getKey(), wrap(entry.getValue()));
+		local = copy;
+	}
+
+	private static Object wrap(Object o) {
+		if(o instanceof Map) {
+			// Request data is parsed from JSON, so map keys are always strings
+			@SuppressWarnings("unchecked")
+			Map<String, Object> map = (Map<String, Object>) o;
+			return new CopyOnWriteMap(map);
+		}
+		if(o instanceof List) {
+			// Only read from, so the element type doesn't matter
+			@SuppressWarnings("unchecked")
+			List<Object> source = (List<Object>) o;
+			List<Object> copy = new ArrayList<Object>(source.size());
+			for(Object item : source)
+				copy.add(wrap(item));
+			return copy;
+		}
+		return o;
+	}
+}
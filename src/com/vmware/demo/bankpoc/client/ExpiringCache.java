@@ -0,0 +1,387 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small, thread safe cache with a maximum size and a time to live for each entry.
+ *
+ * Concurrent misses on the same key are collapsed into a single call to the loader. Any
+ * other thread asking for the same key while it's being loaded waits for the result
+ * of that call rather than issuing its own.
+ *
+ * Null values are cached too, but with a separate (typically much shorter) time to live, so that
+ * something that didn't exist at the time of the lookup is eventually looked up again. Entries can
+ * optionally be given a weight, in which case the cache also evicts entries to stay below a maximum
+ * total weight. If a refresh interval is set, a hit on an entry older than that interval returns the
+ * current value and reloads it in the background, so callers of frequently used entries don't have
+ * to wait for them to be reloaded.
+ *
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class ExpiringCache<K, V> {
+	/**
+	 * Calculates the weight of an entry. The weight of an entry is calculated once, when it's added.
+	 */
+	public interface Weigher<K, V> {
+		int weigh(K key, V value);
+	}
+	
+	private static class CacheEntry<V> {
+		private final V value;
+
+		private final long loaded;
+
+		private final long expires;
+
+		private final int weight;
+
+		public CacheEntry(V value, long loaded, long expires, int weight) {
+			this.value = value;
+			this.loaded = loaded;
+			this.expires = expires;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * A load that can also be completed with a value that's already in the cache.
+	 */
+	private static class LoadTask<V> extends FutureTask<V> {
+		public LoadTask(Callable<V> loader) {
+			super(loader);
+		}
+		
+		public void complete(V value) {
+			this.set(value);
+		}
+	}
+
+	private static final Executor refresher = Executors.newFixedThreadPool(2, new DaemonThreadFactory("cache-refresh"));
+
+	private final long ttlMillis;
+
+	private final long negativeTtlMillis;
+
+	private final long refreshAfterMillis;
+
+	private final int maxSize;
+
+	private final long maxWeight;
+
+	private final Weigher<K, V> weigher;
+
+	private final Map<K, CacheEntry<V>> entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true);
+
+	private long totalWeight;
+
+	private final ConcurrentMap<K, FutureTask<V>> loading = new ConcurrentHashMap<K, FutureTask<V>>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong loads = new AtomicLong();
+
+	private final AtomicLong loadFailures = new AtomicLong();
+
+	private final AtomicLong loadTime = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	private final AtomicLong refreshes = new AtomicLong();
+
+	/**
+	 * Creates a new cache.
+	 * @param ttlMillis Time to live for each entry in milliseconds.
+	 * @param maxSize Maximum number of entries. The least recently used entry is evicted when it's exceeded.
+	 */
+	public ExpiringCache(long ttlMillis, int maxSize) {
+		this(ttlMillis, ttlMillis, 0, maxSize, Long.MAX_VALUE, null);
+	}
+
+	/**
+	 * Creates a new cache.
+	 * @param ttlMillis Time to live for each entry in milliseconds.
+	 * @param negativeTtlMillis Time to live for null values in milliseconds.
+	 * @param refreshAfterMillis Age after which an entry is reloaded in the background when it's hit, or 0 to never do that.
+	 * @param maxSize Maximum number of entries. The least recently used entry is evicted when it's exceeded.
+	 * @param maxWeight Maximum total weight of all entries.
+	 * @param weigher Calculates the weight of an entry, or null to give all entries a weight of 1.
+	 */
+	public ExpiringCache(long ttlMillis, long negativeTtlMillis, long refreshAfterMillis, int maxSize, long maxWeight, Weigher<K, V> weigher) {
+		this.ttlMillis = ttlMillis;
+		this.negativeTtlMillis = negativeTtlMillis;
+		this.refreshAfterMillis = refreshAfterMillis;
+		this.maxSize = maxSize;
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+	}
+
+	/**
+	 * Returns a value from the cache, loading it if it's missing or expired.
+	 *
+	 * @param key The key to look up
+	 * @param loader Called to obtain the value if it's not in the cache.
+	 * @return The cached or newly loaded value.
+	 */
+	public V get(K key, Callable<V> loader) {
+		long now = System.currentTimeMillis();
+		CacheEntry<V> entry = this.getEntry(key, now);
+		if(entry != null) {
+			hits.incrementAndGet();
+			if(refreshAfterMillis > 0 && now - entry.loaded > refreshAfterMillis)
+				this.refresh(key, loader);
+			return entry.value;
+		}
+
+		// Only one thread gets to run the loader. Everyone else waits for it.
+		//
+		LoadTask<V> newTask = new LoadTask<V>(loader);
+		FutureTask<V> task = loading.putIfAbsent(key, newTask);
+		if(task == null) {
+			// The previous load may have finished and unregistered itself since we looked, 
+			// in which case its value is already cached and mustn't be loaded again. 
+			//
+			task = newTask;
+			entry = this.getEntry(key, System.currentTimeMillis());
+			if(entry != null) {
+				hits.incrementAndGet();
+				newTask.complete(entry.value);
+				loading.remove(key, newTask);
+				return entry.value;
+			}
+			misses.incrementAndGet();
+			this.load(key, newTask);
+		} else
+			misses.incrementAndGet();
+		try {
+			return task.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for " + key, e);
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			throw new IllegalStateException("Error loading " + key, cause);
+		}
+	}
+
+	/**
+	 * Returns the values for a number of keys, without loading the ones that are missing.
+	 * @param keys The keys to look up
+	 * @return The values of the keys that are in the cache and haven't expired. Since null values
+	 * are cached, use containsKey on the result to tell a cached null from a missing entry.
+	 */
+	public Map<K, V> getAllPresent(Collection<K> keys) {
+		long now = System.currentTimeMillis();
+		Map<K, V> result = new HashMap<K, V>(keys.size() * 2);
+		synchronized(entries) {
+			for(K key : keys) {
+				CacheEntry<V> entry = entries.get(key);
+				if(entry != null && entry.expires > now)
+					result.put(key, entry.value);
+			}
+		}
+		hits.addAndGet(result.size());
+		misses.addAndGet(keys.size() - result.size());
+		return result;
+	}
+
+	/**
+	 * Puts a value in the cache, replacing any existing value.
+	 * @param key The key
+	 * @param value The value
+	 */
+	public void put(K key, V value) {
+		long now = System.currentTimeMillis();
+		this.put(key, new CacheEntry<V>(value, now, now + (value != null ? ttlMillis : negativeTtlMillis), this.weigh(key, value)));
+	}
+
+	/**
+	 * Removes a single entry from the cache.
+	 * @param key The key to remove.
+	 */
+	public void invalidate(K key) {
+		synchronized(entries) {
+			this.remove(key);
+		}
+	}
+
+	/**
+	 * Removes all entries from the cache.
+	 */
+	public void invalidateAll() {
+		synchronized(entries) {
+			entries.clear();
+			totalWeight = 0;
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the keys currently in the cache.
+	 * @return
+	 */
+	public List<K> keys() {
+		synchronized(entries) {
+			return new ArrayList<K>(entries.keySet());
+		}
+	}
+
+	/**
+	 * Returns the number of entries currently in the cache, including any that have expired
+	 * but not yet been removed.
+	 * @return
+	 */
+	public int size() {
+		synchronized(entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Returns the maximum number of entries this cache will hold.
+	 * @return
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Returns the total weight of the entries currently in the cache.
+	 * @return
+	 */
+	public long getWeight() {
+		synchronized(entries) {
+			return totalWeight;
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the cache statistics.
+	 * @return
+	 */
+	public CacheStats getStats() {
+		int size;
+		long weight;
+		synchronized(entries) {
+			size = entries.size();
+			weight = totalWeight;
+		}
+		return new CacheStats(hits.get(), misses.get(), loads.get(), loadFailures.get(), loadTime.get(), evictions.get(),
+				refreshes.get(), size, weight);
+	}
+
+	/**
+	 * Returns the entry for a key, removing it if it has expired.
+	 */
+	private CacheEntry<V> getEntry(K key, long now) {
+		synchronized(entries) {
+			CacheEntry<V> entry = entries.get(key);
+			if(entry != null && entry.expires <= now) {
+				this.remove(key);
+				entry = null;
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * Runs a load that has been registered in the loading map and stores the result. If the load
+	 * fails, any existing value is left alone.
+	 */
+	private void load(K key, FutureTask<V> task) {
+		long start = System.nanoTime();
+		try {
+			task.run();
+			V value = task.get();
+			loads.incrementAndGet();
+			this.put(key, value);
+		} catch(ExecutionException e) {
+			loadFailures.incrementAndGet();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			loadTime.addAndGet(System.nanoTime() - start);
+			loading.remove(key, task);
+		}
+	}
+
+	/**
+	 * Reloads an entry in the background, unless it's already being loaded.
+	 */
+	private void refresh(final K key, Callable<V> loader) {
+		final FutureTask<V> task = new FutureTask<V>(loader);
+		if(loading.putIfAbsent(key, task) != null)
+			return;
+		refreshes.incrementAndGet();
+		refresher.execute(new Runnable() {
+			@Override
+			public void run() {
+				ExpiringCache.this.load(key, task);
+			}
+		});
+	}
+
+	private void put(K key, CacheEntry<V> entry) {
+		synchronized(entries) {
+			CacheEntry<V> old = entries.put(key, entry);
+			if(old != null)
+				totalWeight -= old.weight;
+			totalWeight += entry.weight;
+			this.trim();
+		}
+	}
+
+	/**
+	 * Evicts the least recently used entries until the cache is within its bounds. Must be called with the cache locked.
+	 */
+	private void trim() {
+		Iterator<CacheEntry<V>> itor = entries.values().iterator();
+		while(itor.hasNext() && (entries.size() > maxSize || totalWeight > maxWeight)) {
+			totalWeight -= itor.next().weight;
+			itor.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Removes an entry. Must be called with the cache locked.
+	 */
+	private void remove(K key) {
+		CacheEntry<V> old = entries.remove(key);
+		if(old != null)
+			totalWeight -= old.weight;
+	}
+
+	private int weigh(K key, V value) {
+		return weigher != null ? weigher.weigh(key, value) : 1;
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records the progress of a fleet operation in a file, so that an interrupted run
+ * can be resumed without repeating work that's already been done.
+ * 
+ * The file is a simple append-only log with one line per state change, holding the machine ID,
+ * the state and the name of the operation. The last line for a machine wins.
+ */
+public class FleetJournal {
+	public static final String DONE = "DONE";
+	
+	public static final String FAILED = "FAILED";
+	
+	public static final String PENDING_FINALIZE = "PENDING_FINALIZE";
+	
+	private final Map<String, String> states = new HashMap<String, String>();
+	
+	private final Map<String, String> operations = new HashMap<String, String>();
+	
+	private final Writer writer;
+	
+	/**
+	 * Opens a journal, reading any progress already recorded in it.
+	 * @param file The journal file. Created if it doesn't exist.
+	 * @throws IOException
+	 */
+	public FleetJournal(File file) throws IOException {
+		if(file.exists()) {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+			try {
+				String line;
+				while((line = reader.readLine()) != null) {
+					String[] parts = line.split(" ", 3);
+					if(parts.length < 2)
+						continue;
+					states.put(parts[0], parts[1]);
+					if(parts.length > 2)
+						operations.put(parts[0], parts[2]);
+					else
+						operations.remove(parts[0]);
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Returns the last recorded state of a machine.
+	 * @param machineId The machine ID
+	 * @return The state, or null if nothing has been recorded.
+	 */
+	public synchronized String getState(String machineId) {
+		return states.get(machineId);
+	}
+	
+	/**
+	 * Returns the name of the operation the last state of a machine was recorded for.
+	 * @param machineId The machine ID
+	 * @return The operation name, or null if nothing has been recorded.
+	 */
+	public synchronized String getOperation(String machineId) {
+		return operations.get(machineId);
+	}
+	
+	/**
+	 * Records a new state for a machine.
+	 * @param machineId The machine ID
+	 * @param state The new state
+	 * @param operation The name of the operation
+	 */
+	public synchronized void record(String machineId, String state, String operation) {
+		states.put(machineId, state);
+		operations.put(machineId, operation);
+		try {
+			writer.write(machineId + " " + state + " " + operation + "\n");
+			writer.flush();
+		} catch(IOException e) {
+			throw new IllegalStateException("Unable to write to fleet journal", e);
+		}
+	}
+	
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.net.URI;
+
+/**
+ * A day 2 operation that can be run across a fleet of machines by a {@link FleetOperationExecutor}.
+ */
+public abstract class FleetOperation {
+	private final String name;
+	
+	protected FleetOperation(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * Submits the operation for a single machine.
+	 * @param client The client to use
+	 * @param machineId The ID of the machine
+	 * @return The URI of the submitted request.
+	 */
+	public abstract URI submit(POCClient client, String machineId);
+	
+	/**
+	 * Returns true if the change has to be finalized once the machine reports that it's pending.
+	 * @return
+	 */
+	public boolean requiresFinalize() {
+		return false;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Reconfigures machines.
+	 * @param config The new configuration
+	 * @param allowShutdown Set to true if machines are allowed to be shut down during reconfiguration.
+	 * @param finalize Set to true to finalize the change as soon as each machine is ready for it.
+	 * @return
+	 */
+	public static FleetOperation reconfigure(final MachineConfiguration config, final boolean allowShutdown, final boolean finalize) {
+		return new FleetOperation("reconfigure") {
+			@Override
+			public URI submit(POCClient client, String machineId) {
+				return client.requestMachineChange(machineId, config, allowShutdown);
+			}
+
+			@Override
+			public boolean requiresFinalize() {
+				return finalize;
+			}
+		};
+	}
+	
+	/**
+	 * Finalizes pending machine changes.
+	 * @return
+	 */
+	public static FleetOperation finalizeChange() {
+		return new FleetOperation("finalize") {
+			@Override
+			public URI submit(POCClient client, String machineId) {
+				return client.finalizeMachineChange(machineId);
+			}
+		};
+	}
+	
+	/**
+	 * Reprovisions machines.
+	 * @return
+	 */
+	public static FleetOperation reprovision() {
+		return new FleetOperation("reprovision") {
+			@Override
+			public URI submit(POCClient client, String machineId) {
+				return client.requestMachineReprovision(machineId);
+			}
+		};
+	}
+	
+	/**
+	 * Destroys machines.
+	 * @return
+	 */
+	public static FleetOperation destroy() {
+		return new FleetOperation("destroy") {
+			@Override
+			public URI submit(POCClient client, String machineId) {
+				return client.destroyMachine(machineId);
+			}
+		};
+	}
+}
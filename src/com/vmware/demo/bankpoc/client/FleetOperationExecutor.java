@@ -0,0 +1,443 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.vmware.vcac.catalog.rest.stubs.v7_0.CatalogResource;
+
+/**
+ * Runs a day 2 operation across a fleet of machines.
+ * 
+ * The number of operations in flight is limited per tenant and per cluster, and submissions to
+ * vRA are rate limited using a token bucket. An operation counts as in flight from the time it's
+ * submitted until the request has completed, so a slow cluster doesn't get buried in requests.
+ * Machines that don't fit within the limits are queued and started as other machines complete, 
+ * and submissions held back by the rate limiter are rescheduled, so worker threads only ever do
+ * actual calls to vRA and never sit waiting for a permit.
+ * 
+ * For a two-phase reconfiguration, each machine moves on to the finalize step as soon as it's
+ * ready for it, independently of the other machines. The machine is polled for the pending change
+ * right after the first request has been submitted. That request is only watched for failures, since
+ * vRA may keep it in progress until the change has been finalized. A machine whose change doesn't
+ * show up as pending within an hour fails. If a journal is given, progress is recorded
+ * in it and a rerun of the same operation with the same journal skips machines that have already 
+ * been completed.
+ */
+public class FleetOperationExecutor {
+	/**
+	 * Determines which cluster a machine belongs to.
+	 */
+	public interface ClusterResolver {
+		String getCluster(String machineId);
+	}
+	
+	/**
+	 * Limits the number of tasks in flight. Tasks that don't fit are queued and handed back
+	 * when a running task releases its slot.
+	 */
+	private static class AdmissionGate {
+		private final int max;
+		
+		private final Queue<Runnable> waiting = new ArrayDeque<Runnable>();
+		
+		private int inFlight;
+		
+		public AdmissionGate(int max) {
+			this.max = max;
+		}
+		
+		/**
+		 * Takes a slot for a task if there is one, otherwise queues the task.
+		 * @return True if the caller should run the task now.
+		 */
+		public synchronized boolean admit(Runnable task) {
+			if(inFlight < max) {
+				++inFlight;
+				return true;
+			}
+			waiting.add(task);
+			return false;
+		}
+		
+		/**
+		 * Releases a slot. 
+		 * @return The next queued task, which has been given the slot, or null if nothing was queued.
+		 */
+		public synchronized Runnable release() {
+			Runnable next = waiting.poll();
+			if(next == null)
+				--inFlight;
+			return next;
+		}
+	}
+	
+	private static final long PENDING_POLL_INTERVAL = 10000;
+	
+	private static final long PENDING_TIMEOUT = 60 * 60 * 1000;
+	
+	private final POCClient client;
+	
+	private final RequestTracker tracker;
+	
+	private final AdmissionGate tenantGate;
+	
+	private final int maxPerCluster;
+	
+	private final ConcurrentMap<String, AdmissionGate> clusterGates = new ConcurrentHashMap<String, AdmissionGate>();
+	
+	private final TokenBucket rateLimiter;
+	
+	private final FleetJournal journal;
+	
+	private ClusterResolver clusterResolver;
+	
+	private final ExecutorService workers;
+	
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("fleet-scheduler"));
+	
+	/**
+	 * Creates a new fleet executor.
+	 * 
+	 * @param client The client to run operations through
+	 * @param maxPerTenant Maximum number of operations in flight for the tenant.
+	 * @param maxPerCluster Maximum number of operations in flight per cluster.
+	 * @param submissionsPerSecond Maximum rate of submissions to vRA.
+	 * @param journal Journal to record progress in. May be null if the run doesn't need to be resumable.
+	 */
+	public FleetOperationExecutor(final POCClient client, int maxPerTenant, int maxPerCluster, double submissionsPerSecond, FleetJournal journal) {
+		this.client = client;
+		this.tracker = client.createRequestTracker();
+		this.tenantGate = new AdmissionGate(maxPerTenant);
+		this.maxPerCluster = maxPerCluster;
+		this.rateLimiter = new TokenBucket(submissionsPerSecond, Math.max(1, (int) submissionsPerSecond));
+		this.journal = journal;
+		this.workers = Executors.newFixedThreadPool(maxPerTenant, new DaemonThreadFactory("fleet-worker"));
+		
+		// By default, we treat the reservation as the cluster, since that's where vRA places the machine.
+		//
+		this.clusterResolver = new ClusterResolver() {
+			@Override
+			public String getCluster(String machineId) {
+				String reservation = client.getMachineDetails(machineId, MachineDetails.RESERVATION).getString(MachineDetails.RESERVATION);
+				return reservation != null ? reservation : "";
+			}
+		};
+	}
+	
+	/**
+	 * Sets the resolver used for determining the cluster of a machine.
+	 * @param clusterResolver The resolver
+	 */
+	public void setClusterResolver(ClusterResolver clusterResolver) {
+		this.clusterResolver = clusterResolver;
+	}
+	
+	/**
+	 * Runs an operation on all machines with a name starting with a prefix.
+	 * 
+	 * @param namePrefix The name prefix
+	 * @param operation The operation to run
+	 * @return A future that completes when the operation has completed or failed for all machines.
+	 */
+	public CompletableFuture<FleetReport> runByPrefix(String namePrefix, FleetOperation operation) {
+		List<String> ids = client.streamCatalogResources(namePrefix, 100)
+				.map(new Function<CatalogResource, String>() {
+					@Override
+					public String apply(CatalogResource r) {
+						return r.getId();
+					}
+				}).collect(Collectors.<String>toList());
+		return this.run(ids, operation);
+	}
+	
+	/**
+	 * Runs an operation on a list of machines. Returns as soon as the machines have been queued up.
+	 * They are then processed in the background.
+	 * 
+	 * @param machineIds The IDs of the machines
+	 * @param operation The operation to run
+	 * @return A future that completes when the operation has completed or failed for all machines.
+	 */
+	public CompletableFuture<FleetReport> run(Collection<String> machineIds, final FleetOperation operation) {
+		final Set<String> succeeded = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final Map<String, Throwable> failed = new ConcurrentHashMap<String, Throwable>();
+		final Set<String> skipped = new HashSet<String>();
+		final CompletableFuture<FleetReport> result = new CompletableFuture<FleetReport>();
+		final AtomicInteger remaining = new AtomicInteger(1);
+		for(final String machineId : machineIds) {
+			// Only trust the journal if it was written by the same operation.
+			//
+			final String state = journal != null && operation.getName().equals(journal.getOperation(machineId)) 
+					? journal.getState(machineId) : null;
+			if(FleetJournal.DONE.equals(state)) {
+				skipped.add(machineId);
+				continue;
+			}
+			remaining.incrementAndGet();
+			this.process(machineId, operation, FleetJournal.PENDING_FINALIZE.equals(state))
+				.whenComplete(new BiConsumer<Void, Throwable>() {
+					@Override
+					public void accept(Void v, Throwable t) {
+						if(t == null) {
+							succeeded.add(machineId);
+							FleetOperationExecutor.this.record(machineId, FleetJournal.DONE, operation);
+						} else {
+							failed.put(machineId, t);
+							FleetOperationExecutor.this.record(machineId, FleetJournal.FAILED, operation);
+						}
+						if(remaining.decrementAndGet() == 0)
+							result.complete(new FleetReport(succeeded, failed, skipped));
+					}
+				});
+		}
+		if(remaining.decrementAndGet() == 0)
+			result.complete(new FleetReport(succeeded, failed, skipped));
+		return result;
+	}
+	
+	/**
+	 * Stops the executor. Operations already submitted to vRA will still run.
+	 */
+	public void shutdown() {
+		workers.shutdownNow();
+		scheduler.shutdownNow();
+		tracker.shutdown();
+	}
+	
+	/**
+	 * Resolves the cluster of a machine and runs the operation once both the cluster and the tenant 
+	 * have room for it.
+	 */
+	private CompletableFuture<Void> process(final String machineId, final FleetOperation operation, final boolean resumeFinalize) {
+		final CompletableFuture<Void> done = new CompletableFuture<Void>();
+		workers.execute(new Runnable() {
+			@Override
+			public void run() {
+				final AdmissionGate clusterGate;
+				try {
+					clusterGate = FleetOperationExecutor.this.getClusterGate(clusterResolver.getCluster(machineId));
+				} catch(Throwable t) {
+					done.completeExceptionally(t);
+					return;
+				}
+				final Runnable start = new Runnable() {
+					@Override
+					public void run() {
+						FleetOperationExecutor.this.runAdmitted(machineId, operation, resumeFinalize).whenComplete(new BiConsumer<Void, Throwable>() {
+							@Override
+							public void accept(Void v, Throwable t) {
+								FleetOperationExecutor.this.release(tenantGate);
+								FleetOperationExecutor.this.release(clusterGate);
+								if(t == null)
+									done.complete(null);
+								else
+									done.completeExceptionally(t);
+							}
+						});
+					}
+				};
+				Runnable admitToTenant = new Runnable() {
+					@Override
+					public void run() {
+						if(tenantGate.admit(start))
+							start.run();
+					}
+				};
+				if(clusterGate.admit(admitToTenant))
+					admitToTenant.run();
+			}
+		});
+		return done;
+	}
+	
+	private CompletableFuture<Void> runAdmitted(final String machineId, final FleetOperation operation, boolean resumeFinalize) {
+		CompletableFuture<Void> pending;
+		if(resumeFinalize)
+			pending = this.waitForPendingChange(machineId, null);
+		else if(operation.requiresFinalize()) {
+			pending = this.submit(machineId, operation).thenCompose(new Function<URI, CompletableFuture<Void>>() {
+				@Override
+				public CompletableFuture<Void> apply(URI uri) {
+					CompletableFuture<Void> request = FleetOperationExecutor.this.track(machineId, operation, uri);
+					return FleetOperationExecutor.this.waitForPendingChange(machineId, request);
+				}
+			}).thenApply(new Function<Void, Void>() {
+				@Override
+				public Void apply(Void v) {
+					FleetOperationExecutor.this.record(machineId, FleetJournal.PENDING_FINALIZE, operation);
+					return null;
+				}
+			});
+		} else
+			return this.submitAndTrack(machineId, operation);
+		return pending.thenCompose(new Function<Void, CompletableFuture<Void>>() {
+			@Override
+			public CompletableFuture<Void> apply(Void v) {
+				return FleetOperationExecutor.this.submitAndTrack(machineId, FleetOperation.finalizeChange());
+			}
+		});
+	}
+	
+	/**
+	 * Releases a slot in a gate and starts the next queued task, if any, on a worker thread.
+	 */
+	private void release(AdmissionGate gate) {
+		Runnable next = gate.release();
+		if(next != null)
+			workers.execute(next);
+	}
+	
+	/**
+	 * Submits an operation and tracks the resulting request until it completes.
+	 */
+	private CompletableFuture<Void> submitAndTrack(final String machineId, final FleetOperation operation) {
+		return this.submit(machineId, operation).thenCompose(new Function<URI, CompletableFuture<Void>>() {
+			@Override
+			public CompletableFuture<Void> apply(URI uri) {
+				return FleetOperationExecutor.this.track(machineId, operation, uri);
+			}
+		});
+	}
+	
+	/**
+	 * Tracks a request until it completes.
+	 * @return A future that completes when the request has succeeded, or fails if the request did.
+	 */
+	private CompletableFuture<Void> track(final String machineId, final FleetOperation operation, URI uri) {
+		final CompletableFuture<Void> done = new CompletableFuture<Void>();
+		tracker.track(uri).whenComplete(new BiConsumer<RequestOutcome, Throwable>() {
+			@Override
+			public void accept(RequestOutcome outcome, Throwable t) {
+				if(t != null)
+					done.completeExceptionally(t);
+				else if(!outcome.isSuccessful())
+					done.completeExceptionally(new IllegalStateException(operation.getName() + " of " + machineId + " ended in state " + outcome.getState()));
+				else
+					done.complete(null);
+			}
+		});
+		return done;
+	}
+	
+	/**
+	 * Submits an operation on a worker thread once the rate limiter allows it. While the rate 
+	 * limiter holds it back, the submission waits on the scheduler rather than on a worker.
+	 * @return A future holding the URI of the request.
+	 */
+	private CompletableFuture<URI> submit(final String machineId, final FleetOperation operation) {
+		final CompletableFuture<URI> done = new CompletableFuture<URI>();
+		final Runnable submit = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					done.complete(operation.submit(client, machineId));
+				} catch(Throwable t) {
+					done.completeExceptionally(t);
+				}
+			}
+		};
+		new Runnable() {
+			@Override
+			public void run() {
+				try {
+					long waitNanos = rateLimiter.tryAcquire();
+					if(waitNanos == 0)
+						workers.execute(submit);
+					else
+						scheduler.schedule(this, waitNanos, TimeUnit.NANOSECONDS);
+				} catch(Throwable t) {
+					done.completeExceptionally(t);
+				}
+			}
+		}.run();
+		return done;
+	}
+	
+	/**
+	 * Polls a machine until a reconfiguration is pending, without holding up any thread in the meantime.
+	 * @param machineId The machine to poll
+	 * @param request The request that makes the change, or null if it has already completed. If it 
+	 * fails before the change shows up, so does the wait.
+	 */
+	private CompletableFuture<Void> waitForPendingChange(final String machineId, CompletableFuture<Void> request) {
+		final CompletableFuture<Void> done = new CompletableFuture<Void>();
+		final long deadline = System.currentTimeMillis() + PENDING_TIMEOUT;
+		if(request != null) {
+			request.whenComplete(new BiConsumer<Void, Throwable>() {
+				@Override
+				public void accept(Void v, Throwable t) {
+					if(t != null)
+						done.completeExceptionally(t);
+				}
+			});
+		}
+		scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				final Runnable self = this;
+				workers.execute(new Runnable() {
+					@Override
+					public void run() {
+						if(done.isDone())
+							return;
+						try {
+							if(client.isChangePending(machineId))
+								done.complete(null);
+							else if(System.currentTimeMillis() > deadline)
+								done.completeExceptionally(new TimeoutException("Timed out waiting for change on " + machineId));
+							else
+								scheduler.schedule(self, PENDING_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+						} catch(Throwable t) {
+							done.completeExceptionally(t);
+						}
+					}
+				});
+			}
+		}, 0, TimeUnit.MILLISECONDS);
+		return done;
+	}
+	
+	private AdmissionGate getClusterGate(String cluster) {
+		AdmissionGate gate = clusterGates.get(cluster);
+		if(gate == null) {
+			AdmissionGate existing = clusterGates.putIfAbsent(cluster, gate = new AdmissionGate(maxPerCluster));
+			if(existing != null)
+				gate = existing;
+		}
+		return gate;
+	}
+	
+	private void record(String machineId, String state, FleetOperation operation) {
+		if(journal != null)
+			journal.record(machineId, state, operation.getName());
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The outcome of a fleet operation.
+ */
+public class FleetReport {
+	private final Set<String> succeeded;
+	
+	private final Map<String, Throwable> failed;
+	
+	private final Set<String> skipped;
+
+	public FleetReport(Set<String> succeeded, Map<String, Throwable> failed, Set<String> skipped) {
+		super();
+		this.succeeded = succeeded;
+		this.failed = failed;
+		this.skipped = skipped;
+	}
+
+	/**
+	 * Returns the IDs of the machines the operation completed for.
+	 * @return
+	 */
+	public Set<String> getSucceeded() {
+		return succeeded;
+	}
+
+	/**
+	 * Returns the IDs of the machines the operation failed for, along with the reason.
+	 * @return
+	 */
+	public Map<String, Throwable> getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Returns the IDs of the machines that were skipped since a previous run had already completed them.
+	 * @return
+	 */
+	public Set<String> getSkipped() {
+		return skipped;
+	}
+}
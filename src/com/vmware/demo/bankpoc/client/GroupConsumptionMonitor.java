@@ -0,0 +1,312 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Keeps the aggregate consumption of a number of groups up to date in the background, so that
+ * callers such as dashboards can read it as often as they like without hitting vR Ops.
+ *
+ * The groups are refreshed together, shortly after each vR Ops collection cycle. The members of each 
+ * group are remembered between refreshes, so a normal refresh only fetches the latest stats for the 
+ * known members. The consumption of each group is kept in a {@link MachineConsumptionTable} that is 
+ * updated in place: only the rows of machines whose consumption has changed are written, and the table
+ * keeps the running totals in step. Readers get an immutable snapshot, a bulk copy of the table that's
+ * only made when something has changed, and never block.
+ * 
+ * The members are enumerated again, and the totals recalculated from scratch, every twelfth refresh by
+ * default, see {@link #setMembershipRefreshInterval(int)}. That's once an hour with the default 5 minute
+ * collection interval. In between, a machine that joins a group isn't counted yet, and a machine that is
+ * moved to another group is still counted, for up to that long. Machines that vR Ops stops reporting stats 
+ * for, e.g. because they were deleted, are dropped at the next refresh.
+ */
+public class GroupConsumptionMonitor {
+	/**
+	 * The current state of a group. Everything but the snapshot and the initial load is owned by the scheduler thread.
+	 */
+	private static class GroupState {
+		private final String tagValue;
+		
+		private final CompletableFuture<AggregateResourceConsumption> loaded = new CompletableFuture<AggregateResourceConsumption>();
+		
+		private final AtomicReference<AggregateResourceConsumption> snapshot = new AtomicReference<AggregateResourceConsumption>();
+		
+		private Map<UUID, String> members;
+		
+		/**
+		 * The table the snapshot was copied from, updated in place by every refresh.
+		 */
+		private MachineConsumptionTable machines;
+		
+		public GroupState(String tagValue) {
+			this.tagValue = tagValue;
+		}
+	}
+	
+	private static final long DEFAULT_COLLECTION_INTERVAL = 5 * 60 * 1000;
+	
+	private static final long COLLECTION_DELAY = 30 * 1000;
+	
+	private static final int DEFAULT_MEMBERSHIP_REFRESH_INTERVAL = 12;
+	
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("consumption-monitor"));
+	
+	private final VROPSClient client;
+	
+	private final String tagName;
+	
+	private final ConcurrentMap<String, GroupState> groups = new ConcurrentHashMap<String, GroupState>();
+	
+	private int refreshCount;
+	
+	private volatile int membershipRefreshInterval = DEFAULT_MEMBERSHIP_REFRESH_INTERVAL;
+	
+	private volatile RuntimeException lastRefreshError;
+	
+	public GroupConsumptionMonitor(VROPSClient client, String tagName) {
+		this(client, tagName, DEFAULT_COLLECTION_INTERVAL);
+	}
+	
+	/**
+	 * Creates a new monitor and starts refreshing.
+	 * @param client The vR Ops client
+	 * @param tagName The name of the tag the groups are based on
+	 * @param collectionInterval The vR Ops collection interval in milliseconds. Refreshes are scheduled
+	 * a short while after each collection.
+	 */
+	public GroupConsumptionMonitor(VROPSClient client, String tagName, long collectionInterval) {
+		this.client = client;
+		this.tagName = tagName;
+		long initialDelay = collectionInterval - System.currentTimeMillis() % collectionInterval + COLLECTION_DELAY;
+		scheduler.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					GroupConsumptionMonitor.this.refresh();
+					lastRefreshError = null;
+				} catch(RuntimeException e) {
+					// Keep the old snapshots and try again next time. A failed refresh
+					// must not escape, since that would cancel all future refreshes.
+					//
+					lastRefreshError = e;
+				}
+			}
+		}, initialDelay, collectionInterval, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Starts monitoring a group. The group is loaded right away on the calling thread, unless it's already 
+	 * monitored. If another thread is already loading it, this call waits for that load instead of loading 
+	 * it again. If the load fails, the group is not monitored.
+	 * @param tagValue The tag value, e.g. the AIT
+	 * @return The current consumption of the group
+	 */
+	public AggregateResourceConsumption watch(final String tagValue) {
+		final boolean[] created = new boolean[1];
+		final GroupState state = groups.computeIfAbsent(tagValue, new Function<String, GroupState>() {
+			@Override
+			public GroupState apply(String key) {
+				created[0] = true;
+				return new GroupState(key);
+			}
+		});
+		if(!created[0])
+			return this.awaitLoad(state);
+		final Map<UUID, String> members;
+		final AggregateResourceConsumption current;
+		try {
+			members = client.getGroupMembers(tagName, Collections.singleton(tagValue)).get(tagValue);
+			if(members == null)
+				throw new IllegalArgumentException("Group not found: " + tagName + "-" + tagValue);
+			current = client.getGroupConsumptions(Collections.singletonMap(tagValue, members)).get(tagValue);
+		} catch(RuntimeException e) {
+			groups.remove(tagValue, state);
+			state.loaded.completeExceptionally(e);
+			throw e;
+		}
+		
+		// Apply it on the scheduler thread, since that's the thread that owns the totals.
+		//
+		scheduler.execute(new Runnable() {
+			@Override
+			public void run() {
+				if(groups.get(tagValue) == state && state.snapshot.get() == null) {
+					state.members = members;
+					GroupConsumptionMonitor.this.recalculate(state, current);
+				}
+			}
+		});
+		state.loaded.complete(current);
+		return current;
+	}
+	
+	/**
+	 * Stops monitoring a group.
+	 * @param tagValue The tag value, e.g. the AIT
+	 */
+	public void unwatch(String tagValue) {
+		groups.remove(tagValue);
+	}
+	
+	/**
+	 * Returns the latest consumption of a group. Never calls vR Ops.
+	 * @param tagValue The tag value, e.g. the AIT
+	 * @return The consumption, or null if the group isn't monitored or hasn't been loaded yet.
+	 */
+	public AggregateResourceConsumption get(String tagValue) {
+		GroupState state = groups.get(tagValue);
+		if(state == null)
+			return null;
+		AggregateResourceConsumption snapshot = state.snapshot.get();
+		return snapshot != null ? snapshot : state.loaded.getNow(null);
+	}
+	
+	/**
+	 * Sets how often the members of the groups are enumerated again, as a number of refreshes. Lower values
+	 * make membership changes show up sooner, at the cost of a full enumeration of every group each time.
+	 * @param refreshes The number of refreshes between enumerations. 1 enumerates the members on every refresh.
+	 */
+	public void setMembershipRefreshInterval(int refreshes) {
+		if(refreshes < 1)
+			throw new IllegalArgumentException("Interval must be at least 1");
+		membershipRefreshInterval = refreshes;
+	}
+	
+	/**
+	 * Returns the error that made the latest background refresh fail. The snapshots from before the 
+	 * failure are kept, so they may be stale while this returns non-null.
+	 * @return The error, or null if the latest refresh succeeded.
+	 */
+	public RuntimeException getLastRefreshError() {
+		return lastRefreshError;
+	}
+	
+	/**
+	 * Stops refreshing.
+	 */
+	public void shutdown() {
+		scheduler.shutdownNow();
+	}
+	
+	/**
+	 * Waits for a group that is being loaded by another thread.
+	 */
+	private AggregateResourceConsumption awaitLoad(GroupState state) {
+		try {
+			return state.loaded.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for group " + state.tagValue, e);
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException("Failed to load group " + state.tagValue, e.getCause());
+		}
+	}
+	
+	/**
+	 * Fetches all monitored groups and updates their snapshots. Runs on the scheduler thread. Groups that
+	 * are unwatched while the refresh is running are left alone.
+	 */
+	private void refresh() {
+		if(groups.isEmpty())
+			return;
+		boolean full = ++refreshCount % membershipRefreshInterval == 0;
+		
+		// Groups that are still being loaded by watch() are picked up next time.
+		//
+		List<GroupState> states = new ArrayList<GroupState>();
+		for(GroupState state : groups.values()) {
+			if(state.members != null)
+				states.add(state);
+		}
+		Map<String, Map<UUID, String>> members = new HashMap<String, Map<UUID, String>>(states.size() * 2);
+		if(full) {
+			List<String> tagValues = new ArrayList<String>(states.size());
+			for(GroupState state : states)
+				tagValues.add(state.tagValue);
+			members.putAll(client.getGroupMembers(tagName, tagValues));
+		} else {
+			for(GroupState state : states)
+				members.put(state.tagValue, state.members);
+		}
+		Map<String, AggregateResourceConsumption> fresh = client.getGroupConsumptions(members);
+		for(GroupState state : states) {
+			AggregateResourceConsumption current = fresh.get(state.tagValue);
+			if(current == null || groups.get(state.tagValue) != state)
+				continue;
+			if(full) {
+				state.members = members.get(state.tagValue);
+				this.recalculate(state, current);
+			} else
+				this.applyDeltas(state, current);
+		}
+	}
+	
+	private void recalculate(GroupState state, AggregateResourceConsumption current) {
+		final MachineConsumptionTable machines = new MachineConsumptionTable(current.getMachineCount());
+		current.visitMachines(new MachineConsumptionTable.Visitor() {
+			@Override
+			public void visit(String name, double cpuMHz, double memoryKB, double storageMB) {
+				machines.put(name, cpuMHz, memoryKB, storageMB);
+			}
+		});
+		state.machines = machines;
+		this.publish(state);
+	}
+	
+	/**
+	 * Writes the machines whose consumption has changed since the last refresh to the table. Publishes a 
+	 * new snapshot only if any of them did.
+	 */
+	private void applyDeltas(GroupState state, AggregateResourceConsumption current) {
+		final MachineConsumptionTable machines = state.machines;
+		final boolean[] changed = new boolean[1];
+		current.visitMachines(new MachineConsumptionTable.Visitor() {
+			@Override
+			public void visit(String name, double cpuMHz, double memoryKB, double storageMB) {
+				int row = machines.indexOf(name);
+				if(row >= 0 && machines.getCpuMHz(row) == cpuMHz && machines.getMemoryKB(row) == memoryKB 
+						&& machines.getStorageMB(row) == storageMB)
+					return;
+				machines.put(name, cpuMHz, memoryKB, storageMB);
+				changed[0] = true;
+			}
+		});
+		
+		// Every current machine is in the table now, so any extra rows are machines that vR Ops had
+		// no stats for this time. Rows can't be removed, so start over from the current consumption.
+		//
+		if(machines.size() != current.getMachineCount())
+			this.recalculate(state, current);
+		else if(changed[0])
+			this.publish(state);
+	}
+	
+	private void publish(GroupState state) {
+		state.snapshot.set(new AggregateResourceConsumption(state.machines.getTotals(), state.machines.copy()));
+	}
+}
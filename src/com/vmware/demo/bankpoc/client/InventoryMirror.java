@@ -0,0 +1,351 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.vmware.vcac.catalog.rest.stubs.v7_0.CatalogResource;
+
+/**
+ * A local copy of the catalog resources in vRA, kept up to date in the background.
+ * 
+ * All resources are loaded when the mirror is started. After that, only the resources that have
+ * changed since the last sync are fetched. Since deleted resources don't show up as changes, the 
+ * mirror is reloaded from scratch every now and then. Resources are indexed by ID, by business group,
+ * by provider binding and by name, where the name index is a sorted map that also answers prefix searches
+ * through a range scan. Name searches are case insensitive, just like the ones made by vRA.
+ */
+public class InventoryMirror {
+	/**
+	 * The resources and all indexes over them.
+	 */
+	private static class Index {
+		private final Map<String, CatalogResource> byId = new HashMap<String, CatalogResource>();
+		
+		private final Map<String, Set<String>> byBusinessGroup = new HashMap<String, Set<String>>();
+		
+		private final Map<String, String> byProviderBinding = new HashMap<String, String>();
+		
+		/**
+		 * Resource IDs by normalized name. Names are almost always unique, so most sets hold a single ID.
+		 */
+		private final NavigableMap<String, Set<String>> names = new TreeMap<String, Set<String>>();
+		
+		private long lastUpdated;
+		
+		/**
+		 * Adds or replaces a resource. Must be called with the write lock held, or on an index no one else can see.
+		 */
+		private void add(CatalogResource resource) {
+			CatalogResource old = byId.put(resource.getId(), resource);
+			if(old != null)
+				this.unindex(old);
+			String name = normalize(resource.getName());
+			Set<String> named = names.get(name);
+			if(named == null) {
+				named = new HashSet<String>(2);
+				names.put(name, named);
+			}
+			named.add(resource.getId());
+			String bg = getBusinessGroupId(resource);
+			if(bg != null) {
+				Set<String> ids = byBusinessGroup.get(bg);
+				if(ids == null) {
+					ids = new HashSet<String>();
+					byBusinessGroup.put(bg, ids);
+				}
+				ids.add(resource.getId());
+			}
+			if(resource.getProviderBinding() != null && resource.getProviderBinding().getBindingId() != null)
+				byProviderBinding.put(resource.getProviderBinding().getBindingId(), resource.getId());
+			if(resource.getLastUpdated() != null)
+				lastUpdated = Math.max(lastUpdated, resource.getLastUpdated().getMillis());
+		}
+	
+		private void unindex(CatalogResource resource) {
+			String name = normalize(resource.getName());
+			Set<String> named = names.get(name);
+			if(named != null) {
+				named.remove(resource.getId());
+				if(named.isEmpty())
+					names.remove(name);
+			}
+			String bg = getBusinessGroupId(resource);
+			if(bg != null) {
+				Set<String> ids = byBusinessGroup.get(bg);
+				if(ids != null) {
+					ids.remove(resource.getId());
+					if(ids.isEmpty())
+						byBusinessGroup.remove(bg);
+				}
+			}
+			if(resource.getProviderBinding() != null && resource.getProviderBinding().getBindingId() != null)
+				byProviderBinding.remove(resource.getProviderBinding().getBindingId());
+		}
+
+	}
+	
+	private static final int PAGE_SIZE = 500;
+	
+	private static final long DEFAULT_SYNC_INTERVAL = 60 * 1000;
+	
+	private static final int FULL_RELOAD_INTERVAL = 60;
+	
+	/**
+	 * How far to go back from the latest change seen when asking for changes, to make up for
+	 * changes that were made in the same instant but weren't visible yet.
+	 */
+	private static final long SYNC_OVERLAP = 1000;
+	
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("inventory-mirror"));
+	
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	private final POCClient client;
+	
+	private final long syncInterval;
+	
+	private Index index = new Index();
+	
+	private volatile long lastSync;
+	
+	private volatile RuntimeException lastSyncError;
+	
+	private int syncCount;
+	
+	public InventoryMirror(POCClient client) {
+		this(client, DEFAULT_SYNC_INTERVAL);
+	}
+	
+	/**
+	 * Creates a new mirror. Call {@link #start()} to load it.
+	 * @param client The client to load resources through
+	 * @param syncInterval How often to fetch changes, in milliseconds.
+	 */
+	public InventoryMirror(POCClient client, long syncInterval) {
+		this.client = client;
+		this.syncInterval = syncInterval;
+	}
+	
+	/**
+	 * Loads all resources and starts syncing in the background.
+	 */
+	public void start() {
+		this.reload();
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					InventoryMirror.this.sync();
+					lastSyncError = null;
+				} catch(RuntimeException e) {
+					// Keep what we have and try again next time. A failed sync must not
+					// escape, since that would cancel all future syncs.
+					//
+					lastSyncError = e;
+				}
+			}
+		}, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Stops syncing.
+	 */
+	public void shutdown() {
+		scheduler.shutdownNow();
+	}
+	
+	/**
+	 * Returns the time of the last successful sync, in milliseconds since the epoch.
+	 * @return
+	 */
+	public long getLastSync() {
+		return lastSync;
+	}
+	
+	/**
+	 * Returns the error that made the latest background sync fail. The mirror keeps its content
+	 * from before the failure, so it may be stale while this returns non-null.
+	 * @return The error, or null if the latest sync succeeded.
+	 */
+	public RuntimeException getLastSyncError() {
+		return lastSyncError;
+	}
+	
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return index.byId.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	public CatalogResource getById(String id) {
+		lock.readLock().lock();
+		try {
+			return index.byId.get(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns the resources with a certain name.
+	 * @param name The name, ignoring case
+	 * @return
+	 */
+	public List<CatalogResource> findByName(String name) {
+		lock.readLock().lock();
+		try {
+			Set<String> ids = index.names.get(normalize(name));
+			return ids != null ? this.resolve(ids, Integer.MAX_VALUE) : Collections.<CatalogResource>emptyList();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns the resources whose names start with a prefix, in name order.
+	 * @param prefix The prefix, ignoring case
+	 * @param limit The maximum number of resources to return
+	 * @return
+	 */
+	public List<CatalogResource> findByPrefix(String prefix, int limit) {
+		lock.readLock().lock();
+		try {
+			List<CatalogResource> result = new ArrayList<CatalogResource>();
+			String normalized = normalize(prefix);
+			for(Map.Entry<String, Set<String>> entry : index.names.tailMap(normalized, true).entrySet()) {
+				if(result.size() >= limit || !entry.getKey().startsWith(normalized))
+					break;
+				result.addAll(this.resolve(entry.getValue(), limit - result.size()));
+			}
+			return result;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	public List<CatalogResource> findByBusinessGroup(String businessGroupId) {
+		lock.readLock().lock();
+		try {
+			Set<String> ids = index.byBusinessGroup.get(businessGroupId);
+			return ids != null ? this.resolve(ids, Integer.MAX_VALUE) : Collections.<CatalogResource>emptyList();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	public CatalogResource findByProviderBinding(String bindingId) {
+		lock.readLock().lock();
+		try {
+			String id = index.byProviderBinding.get(bindingId);
+			return id != null ? index.byId.get(id) : null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Replaces the content of the mirror with everything currently in vRA. The new content is
+	 * built on the side, so readers see the old content until it's done.
+	 */
+	public synchronized void reload() {
+		long started = System.currentTimeMillis();
+		Index fresh = new Index();
+		PagedIterator<CatalogResource> resources = client.iterateCatalogResources(null, PAGE_SIZE);
+		try {
+			while(resources.hasNext())
+				fresh.add(resources.next());
+		} finally {
+			resources.close();
+		}
+		lock.writeLock().lock();
+		try {
+			index = fresh;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		lastSync = started;
+	}
+	
+	/**
+	 * Fetches the resources that have changed since the last sync, or reloads everything if it's time to do so
+	 * or if vRA rejects the change query.
+	 */
+	public synchronized void sync() {
+		if(++syncCount % FULL_RELOAD_INTERVAL == 0) {
+			this.reload();
+			return;
+		}
+		long started = System.currentTimeMillis();
+		List<CatalogResource> changes = new ArrayList<CatalogResource>();
+		try {
+			PagedIterator<CatalogResource> resources = client.iterateCatalogResourcesUpdatedSince(index.lastUpdated - SYNC_OVERLAP, PAGE_SIZE);
+			try {
+				while(resources.hasNext())
+					changes.add(resources.next());
+			} finally {
+				resources.close();
+			}
+		} catch(RuntimeException e) {
+			// The change query depends on vRA accepting the timestamp filter. If it doesn't,
+			// a full reload still leaves us with the right content.
+			//
+			this.reload();
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			for(CatalogResource resource : changes)
+				index.add(resource);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		lastSync = started;
+	}
+	
+	private List<CatalogResource> resolve(Collection<String> ids, int limit) {
+		List<CatalogResource> result = new ArrayList<CatalogResource>(Math.min(ids.size(), limit));
+		for(String id : ids) {
+			if(result.size() >= limit)
+				break;
+			result.add(index.byId.get(id));
+		}
+		return result;
+	}
+	
+	private static String getBusinessGroupId(CatalogResource resource) {
+		if(resource.getOrganization() == null || resource.getOrganization().getSubtenantRef() == null)
+			return null;
+		return resource.getOrganization().getSubtenantRef().getId();
+	}
+	
+	private static String normalize(String name) {
+		return name != null ? name.toLowerCase(Locale.ROOT) : "";
+	}
+}
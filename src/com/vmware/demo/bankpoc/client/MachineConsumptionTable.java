@@ -0,0 +1,303 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Per machine consumption stored column by column. Instead of one map entry and one
+ * ResourceConsumption per machine, the names and each of the metrics are kept in parallel arrays
+ * and an open addressing hash table of row numbers is used to look machines up by name. Names are
+ * interned, so aggregates that are refreshed over and over share the same strings. The table keeps
+ * running totals of its rows, which stay in step with the rows when a machine is replaced or added to.
+ * 
+ * Machines are identified by name only. vR Ops doesn't keep VM names unique, so tables built from vR Ops
+ * resources should use {@link #add(String, double, double, double)}, which sums up machines with the same name
+ * in a single row, rather than {@link #put(String, double, double, double)}, which keeps only the last one.
+ *
+ * Use {@link #visit(Visitor)} or the row accessors to go through the machines without creating any objects.
+ * A table isn't thread safe while it's being populated. Once it's been handed to an 
+ * {@link AggregateResourceConsumption} it should be treated as read only.
+ */
+public class MachineConsumptionTable {
+	/**
+	 * Receives the rows of a table.
+	 */
+	public interface Visitor {
+		void visit(String name, double cpuMHz, double memoryKB, double storageMB);
+	}
+	
+	private String[] names;
+	
+	private double[] cpuMHz;
+	
+	private double[] memoryKB;
+	
+	private double[] storageMB;
+	
+	private int size;
+	
+	private double totCpu;
+	
+	private double totMem;
+	
+	private double totStorage;
+	
+	/**
+	 * Row number + 1 for each slot, 0 means empty
+	 */
+	private int[] slots;
+	
+	public MachineConsumptionTable() {
+		this(16);
+	}
+	
+	/**
+	 * Creates a new table.
+	 * @param expectedSize The number of machines expected. The table grows as needed.
+	 */
+	public MachineConsumptionTable(int expectedSize) {
+		int capacity = Math.max(expectedSize, 4);
+		names = new String[capacity];
+		cpuMHz = new double[capacity];
+		memoryKB = new double[capacity];
+		storageMB = new double[capacity];
+		slots = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+	}
+	
+	/**
+	 * Adds a machine, or replaces the values of a machine with the same name.
+	 * @param name The machine name
+	 * @param cpu CPU usage in MHz
+	 * @param memory Memory usage in KB
+	 * @param storage Storage usage in MB
+	 */
+	public void put(String name, double cpu, double memory, double storage) {
+		int row = this.getOrAddRow(name);
+		totCpu -= cpuMHz[row];
+		totMem -= memoryKB[row];
+		totStorage -= storageMB[row];
+		cpuMHz[row] = cpu;
+		memoryKB[row] = memory;
+		storageMB[row] = storage;
+		totCpu += cpu;
+		totMem += memory;
+		totStorage += storage;
+	}
+	
+	/**
+	 * Adds a machine, or adds the values to those of a machine with the same name.
+	 * @param name The machine name
+	 * @param cpu CPU usage in MHz
+	 * @param memory Memory usage in KB
+	 * @param storage Storage usage in MB
+	 */
+	public void add(String name, double cpu, double memory, double storage) {
+		int row = this.getOrAddRow(name);
+		cpuMHz[row] += cpu;
+		memoryKB[row] += memory;
+		storageMB[row] += storage;
+		totCpu += cpu;
+		totMem += memory;
+		totStorage += storage;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns a copy of this table. The columns are copied in bulk, so this is much cheaper than 
+	 * adding the machines to a new table one by one.
+	 * @return
+	 */
+	public MachineConsumptionTable copy() {
+		MachineConsumptionTable copy = new MachineConsumptionTable(0);
+		copy.names = names.clone();
+		copy.cpuMHz = cpuMHz.clone();
+		copy.memoryKB = memoryKB.clone();
+		copy.storageMB = storageMB.clone();
+		copy.slots = slots.clone();
+		copy.size = size;
+		copy.totCpu = totCpu;
+		copy.totMem = totMem;
+		copy.totStorage = totStorage;
+		return copy;
+	}
+	
+	/**
+	 * Returns the sum of all rows. A replaced machine only counts with its latest values, while machines
+	 * added under the same name all count.
+	 * @return
+	 */
+	public ResourceConsumption getTotals() {
+		return new ResourceConsumption(totCpu, totMem, totStorage);
+	}
+	
+	/**
+	 * Returns the row of a machine.
+	 * @param name The machine name
+	 * @return The row number, or -1 if there's no such machine.
+	 */
+	public int indexOf(Object name) {
+		if(!(name instanceof String))
+			return -1;
+		return slots[this.findSlot((String) name)] - 1;
+	}
+	
+	public String getName(int row) {
+		return names[this.check(row)];
+	}
+	
+	public double getCpuMHz(int row) {
+		return cpuMHz[this.check(row)];
+	}
+	
+	public double getMemoryKB(int row) {
+		return memoryKB[this.check(row)];
+	}
+	
+	public double getStorageMB(int row) {
+		return storageMB[this.check(row)];
+	}
+	
+	/**
+	 * Calls a visitor for every machine in the order they were added.
+	 * @param visitor The visitor
+	 */
+	public void visit(Visitor visitor) {
+		for(int i = 0; i < size; ++i)
+			visitor.visit(names[i], cpuMHz[i], memoryKB[i], storageMB[i]);
+	}
+	
+	/**
+	 * Returns a read only map view of this table. ResourceConsumption objects are created as the map is read.
+	 * @return
+	 */
+	public Map<String, ResourceConsumption> asMap() {
+		return new AbstractMap<String, ResourceConsumption>() {
+			@Override
+			public ResourceConsumption get(Object key) {
+				int row = MachineConsumptionTable.this.indexOf(key);
+				return row >= 0 ? MachineConsumptionTable.this.toConsumption(row) : null;
+			}
+			
+			@Override
+			public boolean containsKey(Object key) {
+				return MachineConsumptionTable.this.indexOf(key) >= 0;
+			}
+			
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public Set<Map.Entry<String, ResourceConsumption>> entrySet() {
+				return new AbstractSet<Map.Entry<String, ResourceConsumption>>() {
+					@Override
+					public Iterator<Map.Entry<String, ResourceConsumption>> iterator() {
+						return new Iterator<Map.Entry<String, ResourceConsumption>>() {
+							private int row;
+							
+							@Override
+							public boolean hasNext() {
+								return row < size;
+							}
+
+							@Override
+							public Map.Entry<String, ResourceConsumption> next() {
+								if(row >= size)
+									throw new NoSuchElementException();
+								Map.Entry<String, ResourceConsumption> entry = new AbstractMap.SimpleImmutableEntry<String, ResourceConsumption>(
+										names[row], MachineConsumptionTable.this.toConsumption(row));
+								++row;
+								return entry;
+							}
+							
+							@Override
+							public void remove() {
+								throw new UnsupportedOperationException();
+							}
+						};
+					}
+
+					@Override
+					public int size() {
+						return size;
+					}
+				};
+			}
+		};
+	}
+	
+	private ResourceConsumption toConsumption(int row) {
+		return new ResourceConsumption(cpuMHz[row], memoryKB[row], storageMB[row]);
+	}
+	
+	private int check(int row) {
+		if(row < 0 || row >= size)
+			throw new IndexOutOfBoundsException("Row: " + row + " size: " + size);
+		return row;
+	}
+	
+	/**
+	 * Returns the row of a name, adding an empty row if there isn't one.
+	 */
+	private int getOrAddRow(String name) {
+		int slot = this.findSlot(name);
+		if(slots[slot] != 0)
+			return slots[slot] - 1;
+		if(size == names.length) {
+			this.grow();
+			slot = this.findSlot(name);
+		}
+		int row = size++;
+		names[row] = name.intern();
+		slots[slot] = row + 1;
+		return row;
+	}
+	
+	/**
+	 * Returns the slot holding a name, or the empty slot where it should go.
+	 */
+	private int findSlot(String name) {
+		int mask = slots.length - 1;
+		int h = name.hashCode();
+		int slot = (h ^ (h >>> 16)) & mask;
+		while(slots[slot] != 0 && !names[slots[slot] - 1].equals(name))
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+	
+	private void grow() {
+		int capacity = names.length * 2;
+		names = Arrays.copyOf(names, capacity);
+		cpuMHz = Arrays.copyOf(cpuMHz, capacity);
+		memoryKB = Arrays.copyOf(memoryKB, capacity);
+		storageMB = Arrays.copyOf(storageMB, capacity);
+		slots = new int[slots.length * 2];
+		int mask = slots.length - 1;
+		for(int row = 0; row < size; ++row) {
+			int h = names[row].hashCode();
+			int slot = (h ^ (h >>> 16)) & mask;
+			while(slots[slot] != 0)
+				slot = (slot + 1) & mask;
+			slots[slot] = row + 1;
+		}
+	}
+}
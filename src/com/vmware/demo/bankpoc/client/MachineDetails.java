@@ -0,0 +1,204 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * A projection of the resource view of a machine, holding only the fields the caller asked for.
+ * 
+ * The resource view is read token by token, and everything that wasn't asked for is skipped without
+ * being turned into objects. Parsing stops once the data section, the resource ID and the name have 
+ * all been seen, so any fields after them are never looked at. Only scalar fields (strings, numbers 
+ * and booleans) in the data section can be projected. 
+ * 
+ * The resource view is handed over as a string, so the whole response body is still read into memory 
+ * before parsing starts. What's saved is building the full object tree.
+ */
+public class MachineDetails {
+	public static final String CPU = "MachineCPU";
+	
+	public static final String MEMORY = "MachineMemory";
+	
+	public static final String STORAGE = "MachineStorage";
+	
+	public static final String RESERVATION = "MachineReservationName";
+	
+	public static final String BLUEPRINT = "MachineBlueprintName";
+	
+	public static final String STATUS = "MachineStatus";
+	
+	private static final JsonFactory factory = new JsonFactory();
+	
+	private final String resourceId;
+	
+	private final String name;
+	
+	private final Map<String, Object> data;
+	
+	private MachineDetails(String resourceId, String name, Map<String, Object> data) {
+		this.resourceId = resourceId;
+		this.name = name;
+		this.data = data;
+	}
+	
+	/**
+	 * Parses a resource view.
+	 * @param json The resource view
+	 * @param fields The fields to pick from the data section of the resource view.
+	 * @return
+	 * @throws IOException If the resource view isn't valid JSON.
+	 */
+	public static MachineDetails parse(String json, String... fields) throws IOException {
+		return parse(json, Arrays.asList(fields));
+	}
+	
+	/**
+	 * Parses a resource view.
+	 * @param json The resource view
+	 * @param fields The fields to pick from the data section of the resource view.
+	 * @return
+	 * @throws IOException If the resource view isn't valid JSON.
+	 */
+	public static MachineDetails parse(String json, Collection<String> fields) throws IOException {
+		Set<String> wanted = new HashSet<String>(fields);
+		String resourceId = null;
+		String name = null;
+		boolean dataSeen = false;
+		Map<String, Object> data = new HashMap<String, Object>(wanted.size() * 2);
+		JsonParser parser = factory.createParser(json);
+		try {
+			if(parser.nextToken() != JsonToken.START_OBJECT)
+				throw new IOException("Resource view is not a JSON object");
+			while(parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+				if("resourceId".equals(field) && token.isScalarValue())
+					resourceId = parser.getText();
+				else if("name".equals(field) && token.isScalarValue())
+					name = parser.getText();
+				else if("data".equals(field) && token == JsonToken.START_OBJECT) {
+					readData(parser, wanted, data);
+					dataSeen = true;
+				} else
+					parser.skipChildren();
+				if(dataSeen && resourceId != null && name != null)
+					break;
+			}
+		} finally {
+			parser.close();
+		}
+		return new MachineDetails(resourceId, name, Collections.unmodifiableMap(data));
+	}
+	
+	public String getResourceId() {
+		return resourceId;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Returns a field from the data section.
+	 * @param field The field name
+	 * @return The value, or null if it wasn't found or wasn't asked for.
+	 */
+	public Object get(String field) {
+		return data.get(field);
+	}
+	
+	public String getString(String field) {
+		Object value = data.get(field);
+		return value != null ? value.toString() : null;
+	}
+	
+	public int getInt(String field, int defaultValue) {
+		Object value = data.get(field);
+		if(value instanceof Number)
+			return ((Number) value).intValue();
+		if(value instanceof String) {
+			try {
+				return Integer.parseInt((String) value);
+			} catch(NumberFormatException e) {
+				// Fall through
+			}
+		}
+		return defaultValue;
+	}
+	
+	public double getDouble(String field, double defaultValue) {
+		Object value = data.get(field);
+		if(value instanceof Number)
+			return ((Number) value).doubleValue();
+		if(value instanceof String) {
+			try {
+				return Double.parseDouble((String) value);
+			} catch(NumberFormatException e) {
+				// Fall through
+			}
+		}
+		return defaultValue;
+	}
+	
+	/**
+	 * Returns the fields that were found.
+	 * @return
+	 */
+	public Map<String, Object> getData() {
+		return data;
+	}
+	
+	@Override
+	public String toString() {
+		return name + " (" + resourceId + "): " + data;
+	}
+	
+	/**
+	 * Reads the wanted scalar fields of the data object and skips the rest. The parser is positioned
+	 * at the start of the object and is left at the end of it.
+	 */
+	private static void readData(JsonParser parser, Set<String> wanted, Map<String, Object> data) throws IOException {
+		while(parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if(!wanted.contains(field) || !token.isScalarValue()) {
+				parser.skipChildren();
+				continue;
+			}
+			switch(token) {
+			case VALUE_NUMBER_INT:
+			case VALUE_NUMBER_FLOAT:
+				data.put(field, parser.getNumberValue());
+				break;
+			case VALUE_TRUE:
+			case VALUE_FALSE:
+				data.put(field, parser.getBooleanValue());
+				break;
+			case VALUE_NULL:
+				break;
+			default:
+				data.put(field, parser.getText());
+			}
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.util.Arrays;
+
+/**
+ * A time series for a single metric, stored as two parallel primitive arrays rather than one
+ * object per sample. A series of 90 days of 5 minute samples takes about 400KB this way.
+ *
+ * The arrays are shared with the caller and must not be modified. All aggregate operations are
+ * plain loops over the value array.
+ */
+public class MetricSeries {
+	public static final MetricSeries EMPTY = new MetricSeries(new long[0], new double[0]);
+	
+	private final long[] timestamps;
+	
+	private final double[] values;
+	
+	/**
+	 * Creates a new series.
+	 * @param timestamps Sample times in milliseconds since the epoch, in ascending order.
+	 * @param values The sample values
+	 */
+	public MetricSeries(long[] timestamps, double[] values) {
+		if(timestamps.length != values.length)
+			throw new IllegalArgumentException("Got " + timestamps.length + " timestamps but " + values.length + " values");
+		this.timestamps = timestamps;
+		this.values = values;
+	}
+	
+	public int size() {
+		return values.length;
+	}
+	
+	public long getTimestamp(int index) {
+		return timestamps[index];
+	}
+	
+	public double getValue(int index) {
+		return values[index];
+	}
+	
+	/**
+	 * Returns the underlying timestamp array. Don't modify it.
+	 * @return
+	 */
+	public long[] getTimestamps() {
+		return timestamps;
+	}
+	
+	/**
+	 * Returns the underlying value array. Don't modify it.
+	 * @return
+	 */
+	public double[] getValues() {
+		return values;
+	}
+	
+	public double sum() {
+		double sum = 0.0;
+		for(int i = 0; i < values.length; ++i)
+			sum += values[i];
+		return sum;
+	}
+	
+	/**
+	 * Returns the average value, or NaN if the series is empty.
+	 * @return
+	 */
+	public double average() {
+		return values.length > 0 ? this.sum() / values.length : Double.NaN;
+	}
+	
+	/**
+	 * Returns the highest value, or NaN if the series is empty.
+	 * @return
+	 */
+	public double max() {
+		if(values.length == 0)
+			return Double.NaN;
+		double max = values[0];
+		for(int i = 1; i < values.length; ++i)
+			max = Math.max(max, values[i]);
+		return max;
+	}
+	
+	/**
+	 * Returns the lowest value, or NaN if the series is empty.
+	 * @return
+	 */
+	public double min() {
+		if(values.length == 0)
+			return Double.NaN;
+		double min = values[0];
+		for(int i = 1; i < values.length; ++i)
+			min = Math.min(min, values[i]);
+		return min;
+	}
+	
+	/**
+	 * Returns a percentile of the values, interpolating between the closest samples.
+	 * @param percentile The percentile, between 0 and 100.
+	 * @return The value at the percentile, or NaN if the series is empty.
+	 */
+	public double percentile(double percentile) {
+		if(percentile < 0 || percentile > 100)
+			throw new IllegalArgumentException("Percentile must be between 0 and 100");
+		if(values.length == 0)
+			return Double.NaN;
+		double[] sorted = Arrays.copyOf(values, values.length);
+		Arrays.sort(sorted);
+		double rank = percentile / 100.0 * (sorted.length - 1);
+		int lower = (int) Math.floor(rank);
+		int upper = (int) Math.ceil(rank);
+		return sorted[lower] + (sorted[upper] - sorted[lower]) * (rank - lower);
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.vmware.vcac.catalog.rest.stubs.ConsumerResourceOperation;
+
+/**
+ * Resolves day 2 operations by binding ID or name without asking vRA for the full list
+ * of available operations every time.
+ *
+ * Operations are indexed per resource type, since all resources of the same type share
+ * the same operation definitions. Resources whose type isn't known yet are indexed under
+ * their own ID until a type is registered for them. The types are kept in a bounded cache, so a
+ * resource that hasn't been registered in a while falls back to its own index. Note that the index
+ * answers the question "what is the operation called X for this kind of resource", not "is X
+ * available right now".
+ * Use {@link POCClient#getDay2Operations(String)} for the latter.
+ */
+public class OperationCatalog {
+	/**
+	 * Operations for a single resource type, indexed by binding ID and by name.
+	 */
+	private static class OperationIndex {
+		private final Map<String, ConsumerResourceOperation> byBindingId = new HashMap<String, ConsumerResourceOperation>();
+
+		private final Map<String, ConsumerResourceOperation> byName = new HashMap<String, ConsumerResourceOperation>();
+
+		public OperationIndex(Collection<ConsumerResourceOperation> ops) {
+			this.addAll(ops);
+		}
+
+		public OperationIndex(OperationIndex base, Collection<ConsumerResourceOperation> ops) {
+			byBindingId.putAll(base.byBindingId);
+			byName.putAll(base.byName);
+			this.addAll(ops);
+		}
+
+		private void addAll(Collection<ConsumerResourceOperation> ops) {
+			for(ConsumerResourceOperation op : ops) {
+				if(op.getBindingId() != null)
+					byBindingId.put(op.getBindingId(), op);
+				if(op.getName() != null)
+					byName.put(op.getName(), op);
+			}
+		}
+	}
+
+	private static final long DEFAULT_TTL = 30 * 60 * 1000;
+
+	private static final int DEFAULT_SIZE = 500;
+
+	private static final int MAX_RESOURCE_TYPES = 10000;
+
+	private final VRASession session;
+
+	private final ExpiringCache<String, String> resourceTypes;
+
+	private final ExpiringCache<String, OperationIndex> indexes;
+
+	public OperationCatalog(VRASession session) {
+		this(session, DEFAULT_TTL, DEFAULT_SIZE);
+	}
+
+	/**
+	 * Creates a new operation catalog.
+	 * @param session The session used to load operations.
+	 * @param ttl Time to live for an index in milliseconds.
+	 * @param maxSize Maximum number of indexes to keep.
+	 */
+	public OperationCatalog(VRASession session, long ttl, int maxSize) {
+		this.session = session;
+		indexes = new ExpiringCache<String, OperationIndex>(ttl, maxSize);
+		resourceTypes = new ExpiringCache<String, String>(ttl, MAX_RESOURCE_TYPES);
+	}
+
+	/**
+	 * Records the type of a resource, allowing it to share the operation index with
+	 * all other resources of the same type.
+	 *
+	 * @param resourceId The ID of the resource
+	 * @param resourceTypeId The resource type, e.g. "Infrastructure.Virtual"
+	 */
+	public void registerResourceType(String resourceId, String resourceTypeId) {
+		if(resourceId != null && resourceTypeId != null)
+			resourceTypes.put(resourceId, resourceTypeId);
+	}
+
+	/**
+	 * Returns a day 2 operation based on its binding ID, e.g. "Infrastructure.Machine.Action.Reconfigure".
+	 * @param resourceId The resource ID
+	 * @param bindingId The binding ID of the operation
+	 * @return The operation, or null if the resource doesn't have it.
+	 */
+	public ConsumerResourceOperation getByBindingId(String resourceId, String bindingId) {
+		return this.find(resourceId, bindingId, true);
+	}
+
+	/**
+	 * Returns a day 2 operation based on its name.
+	 * @param resourceId The resource ID
+	 * @param name The name of the operation
+	 * @return The operation, or null if the resource doesn't have it.
+	 */
+	public ConsumerResourceOperation getByName(String resourceId, String name) {
+		return this.find(resourceId, name, false);
+	}
+
+	/**
+	 * Clears all indexed operations. Call this when entitlements have changed.
+	 */
+	public void invalidate() {
+		indexes.invalidateAll();
+	}
+
+	/**
+	 * Returns statistics for the index cache.
+	 * @return
+	 */
+	public CacheStats getStats() {
+		return indexes.getStats();
+	}
+
+	private ConsumerResourceOperation find(String resourceId, String key, boolean byBindingId) {
+		final boolean[] loaded = new boolean[1];
+		OperationIndex index = this.getIndex(resourceId, loaded);
+		ConsumerResourceOperation op = (byBindingId ? index.byBindingId : index.byName).get(key);
+		if(op == null && !loaded[0]) {
+			// The index may have been built from another resource of the same type that was in
+			// a different state, or it may be stale. Reload from this resource and merge.
+			//
+			index = this.refresh(resourceId, index);
+			op = (byBindingId ? index.byBindingId : index.byName).get(key);
+		}
+		return op;
+	}
+
+	private OperationIndex getIndex(final String resourceId, final boolean[] loaded) {
+		return indexes.get(this.getIndexKey(resourceId), new Callable<OperationIndex>() {
+			@Override
+			public OperationIndex call() {
+				loaded[0] = true;
+				return new OperationIndex(session.getResourceService().getAvailableOperations(resourceId));
+			}
+		});
+	}
+
+	private OperationIndex refresh(String resourceId, OperationIndex current) {
+		OperationIndex refreshed = new OperationIndex(current, session.getResourceService().getAvailableOperations(resourceId));
+		indexes.put(this.getIndexKey(resourceId), refreshed);
+		return refreshed;
+	}
+
+	private String getIndexKey(String resourceId) {
+		String type = resourceTypes.getAllPresent(Collections.singleton(resourceId)).get(resourceId);
+		return type != null ? "type:" + type : "resource:" + resourceId;
+	}
+}
@@ -9,22 +9,38 @@
  */
 package com.vmware.demo.bankpoc.client;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.nio.channels.IllegalSelectorException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import org.springframework.data.domain.Pageable;
-import org.springframework.http.MediaType;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.vmware.cafe.consumer.ConsumerService;
 import com.vmware.vcac.authentication.rest.client.service.SubtenantService;
 import com.vmware.vcac.authentication.rest.stubs.Subtenant;
 import com.vmware.vcac.catalog.rest.client.service.impl.ConsumerCatalogItemService;
@@ -50,12 +66,10 @@ import com.vmware.vcac.platform.content.literals.MultipleLiteral;
 import com.vmware.vcac.platform.content.literals.SecureStringLiteral;
 import com.vmware.vcac.platform.content.literals.StringLiteral;
 import com.vmware.vcac.platform.content.schema.DataTypeId;
-import com.vmware.vcac.platform.rest.client.RestClient;
 import com.vmware.vcac.platform.rest.client.query.FilterParam;
 import com.vmware.vcac.platform.rest.client.query.OdataQuery;
 import com.vmware.vcac.platform.rest.client.query.PageOdataRequest;
 import com.vmware.vcac.platform.rest.data.LabelledReference;
-import com.vmware.vcac.platform.security.SslCertificateTrust;
 import com.vmware.vcac.reservation.rest.stubs.ReservationPolicy;
 
 /**
@@ -67,27 +81,191 @@ import com.vmware.vcac.reservation.rest.stubs.ReservationPolicy;
  *
  */
 public class POCClient {
-	private ConsumerService service;
-	private RestClient catalogClient;
-	private RestClient identityClient;
-	private RestClient reservationClient;
+	private final VRASession session;
+	private final String tenant;
+	private final ExpiringCache<LookupKey, Collection<?>> lookupCache;
+	private OperationCatalog operationCatalog;
+	private TemplateCache templateCache;
+	private final ExpiringCache<List<String>, ProvisionPlan> provisionPlans;
+	private final CachedPatchPlan reconfigurePlan;
+	private final ThreadPoolExecutor detailsExecutor;
 
-	private static final String CATALOG_SERVICE = "catalog-service";
-	private static final String RESERVATION_SERVICE = "reservation-service";
-	private static final String IDENTITY_SERVICE = "identity";
+	static final String MIGRATION_CATALOG_ITEM = "Migrate Legacy VM (API friendly)";
+	
+	private static final ObjectMapper mapper = new ObjectMapper();
+	
+	private static final DateTimeFormatter ODATA_TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+	
+	private static final long DEFAULT_LOOKUP_TTL = 5 * 60 * 1000;
+	private static final int DEFAULT_LOOKUP_CACHE_SIZE = 1000;
+	
+	private static final long PATCH_PLAN_TTL = 60 * 60 * 1000;
+	private static final int PATCH_PLAN_CACHE_SIZE = 100;
+	
+	private static final RequestPatchPlan.Builder RECONFIGURE_PLAN = new RequestPatchPlan.Builder();
+	private static final int RECONFIGURE_CPU = RECONFIGURE_PLAN.bind(RequestPatchPlan.path("cpu"));
+	private static final int RECONFIGURE_MEMORY = RECONFIGURE_PLAN.bind(RequestPatchPlan.path("memory"));
+	private static final int RECONFIGURE_ALLOW_SHUTDOWN = RECONFIGURE_PLAN.bind(RequestPatchPlan.path("allowForceShutdown"));
+	private static final int RECONFIGURE_DISK = RECONFIGURE_PLAN.bind(RequestPatchPlan.path("disks", 0, "data", "size"));
+	private static final int RECONFIGURE_FORCE_SHUTDOWN = RECONFIGURE_PLAN.bind(RequestPatchPlan.path("Cafe.Shim.VirtualMachine.Reconfigure.AllowForceShutdown"));
+	
+	static {
+		RECONFIGURE_PLAN.set(RequestPatchPlan.path("Cafe.Shim.VirtualMachine.Reconfigure.Requestor"), 1);
+		//RECONFIGURE_PLAN.set(RequestPatchPlan.path("executionSelector"), 1); // Immediate shutdown
+		RECONFIGURE_PLAN.set(RequestPatchPlan.path("powerActionSelector"), 0); // Power-off allowed
+	}
+	
+	/**
+	 * A request patch plan that's compiled against the first request it's applied to and then reused. 
+	 * If a request no longer matches the plan, e.g. because a blueprint has changed, the plan is compiled again.
+	 */
+	private static class CachedPatchPlan {
+		private final RequestPatchPlan.Builder builder;
+		private volatile RequestPatchPlan plan;
+		
+		public CachedPatchPlan(RequestPatchPlan.Builder builder) {
+			this.builder = builder;
+		}
+		
+		protected RequestPatchPlan.Builder getBuilder() {
+			return builder;
+		}
+		
+		public void apply(Map<String, Object> data, Object... args) {
+			RequestPatchPlan current = plan;
+			if(current != null) {
+				try {
+					current.apply(data, args);
+					return;
+				} catch(IllegalStateException e) {
+					// Stale plan. Fall through and compile it again.
+				}
+			}
+			current = builder.compile(data);
+			plan = current;
+			current.apply(data, args);
+		}
+	}
+	
+	/**
+	 * The patch plan for provisioning requests that configure a certain set of elements, along
+	 * with the argument positions of each element.
+	 */
+	private static final class ProvisionPlan extends CachedPatchPlan {
+		private final int[] cpuArgs;
+		private final int[] memoryArgs;
+		private final int[] propertyArgs;
+		private final int argCount;
+		
+		public ProvisionPlan(List<String> elements) {
+			super(new RequestPatchPlan.Builder());
+			cpuArgs = new int[elements.size()];
+			memoryArgs = new int[elements.size()];
+			propertyArgs = new int[elements.size()];
+			RequestPatchPlan.Builder builder = this.getBuilder();
+			for(int i = 0; i < elements.size(); ++i) {
+				String element = elements.get(i);
+				cpuArgs[i] = builder.bind(RequestPatchPlan.path(element, "data", "cpu"));
+				memoryArgs[i] = builder.bind(RequestPatchPlan.path(element, "data", "memory"));
+				propertyArgs[i] = builder.bindAll(RequestPatchPlan.path(element, "data"));
+			}
+			argCount = builder.getArgCount();
+		}
+	}
+	
+	/**
+	 * Key for name based lookups. Lookups are cached per tenant, kind of object, name prefix
+	 * and limit, since all of them affect the result.
+	 */
+	private static final class LookupKey {
+		private final String tenant;
+		private final String kind;
+		private final String name;
+		private final int limit;
+		
+		public LookupKey(String tenant, String kind, String name, int limit) {
+			this.tenant = tenant;
+			this.kind = kind;
+			this.name = name;
+			this.limit = limit;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = kind.hashCode();
+			result = 31 * result + (tenant == null ? 0 : tenant.hashCode());
+			result = 31 * result + (name == null ? 0 : name.hashCode());
+			return 31 * result + limit;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof LookupKey))
+				return false;
+			LookupKey other = (LookupKey) obj;
+			return kind.equals(other.kind) && limit == other.limit
+					&& (tenant == null ? other.tenant == null : tenant.equals(other.tenant))
+					&& (name == null ? other.name == null : name.equals(other.name));
+		}
+	}
 
 	public POCClient(String url, String user, String password, String tenant) {
-		service = new ConsumerService(url, SslCertificateTrust.ALWAYS_TRUST);
-		if(tenant == null) 
-			service.authenticate(user, password);
-		else
-			service.authenticate(tenant, user, password);
-		catalogClient = service.getDefaultRestClientForService(CATALOG_SERVICE);
-		catalogClient.setMediaType(MediaType.APPLICATION_JSON);
-		identityClient = service.getDefaultRestClientForService(IDENTITY_SERVICE);
-		identityClient.setMediaType(MediaType.APPLICATION_JSON);
-		reservationClient = service.getDefaultRestClientForService(RESERVATION_SERVICE);
-		reservationClient.setMediaType(MediaType.APPLICATION_JSON);
+		this(url, user, password, tenant, DEFAULT_LOOKUP_TTL, DEFAULT_LOOKUP_CACHE_SIZE);
+	}
+	
+	/**
+	 * Creates a client with a custom configuration for the lookup cache. Clients created with the same
+	 * URL, tenant and credentials share a single session with vRA.
+	 * 
+	 * @param url The vRA URL
+	 * @param user Username
+	 * @param password Password
+	 * @param tenant The tenant to log in to. Uses the default tenant if null.
+	 * @param lookupTtl Time to live in milliseconds for cached catalog item, business group and reservation policy lookups.
+	 * @param lookupCacheSize Maximum number of cached lookups.
+	 */
+	public POCClient(String url, String user, String password, String tenant, long lookupTtl, int lookupCacheSize) {
+		this(VRASessionFactory.getSession(url, user, password, tenant), lookupTtl, lookupCacheSize);
+	}
+	
+	/**
+	 * Creates a client on top of an existing session. Any number of clients can share a session.
+	 * 
+	 * @param session The session to use
+	 */
+	public POCClient(VRASession session) {
+		this(session, DEFAULT_LOOKUP_TTL, DEFAULT_LOOKUP_CACHE_SIZE);
+	}
+	
+	/**
+	 * Creates a client on top of an existing session, with a custom configuration for the lookup cache.
+	 * 
+	 * @param session The session to use
+	 * @param lookupTtl Time to live in milliseconds for cached catalog item, business group and reservation policy lookups.
+	 * @param lookupCacheSize Maximum number of cached lookups.
+	 */
+	public POCClient(VRASession session, long lookupTtl, int lookupCacheSize) {
+		this.session = session;
+		this.tenant = session.getTenant();
+		lookupCache = new ExpiringCache<LookupKey, Collection<?>>(lookupTtl, lookupCacheSize);
+		operationCatalog = new OperationCatalog(session);
+		templateCache = new TemplateCache(session);
+		provisionPlans = new ExpiringCache<List<String>, ProvisionPlan>(PATCH_PLAN_TTL, PATCH_PLAN_CACHE_SIZE);
+		reconfigurePlan = new CachedPatchPlan(RECONFIGURE_PLAN);
+		
+		// Shared by all bulk detail fetches. Idle threads go away, so an unused client holds no threads.
+		//
+		int limit = TenantThrottle.forTenant(tenant).getLimit();
+		detailsExecutor = new ThreadPoolExecutor(limit, limit, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("vra-details"));
+		detailsExecutor.allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	 * Returns the tenant the client works against.
+	 * @return The tenant name, or null for the default tenant.
+	 */
+	public String getTenant() {
+		return tenant;
 	}
 
 	/**
@@ -98,12 +276,48 @@ public class POCClient {
 	 * @param limit Maximum number of catalog items to return
 	 * @return
 	 */
-	public Collection<CatalogItem> getCatalogItems(String name, int limit) {
-		ConsumerCatalogItemService catalogItemService = new ConsumerCatalogItemService(catalogClient);
+	public Collection<CatalogItem> getCatalogItems(final String name, final int limit) {
+		return this.cachedLookup(new LookupKey(tenant, "catalogItem", name, limit), new Callable<Collection<CatalogItem>>() {
+			@Override
+			public Collection<CatalogItem> call() {
+				return Collections.unmodifiableCollection(POCClient.this.loadCatalogItems(name, 1, limit));
+			}
+		});
+	}
+	
+	/**
+	 * Returns an iterator over all catalog items matching a name. Pages are fetched as they are needed.
+	 * 
+	 * @param name Starting characters to match. All items returned if null.
+	 * @param pageSize Number of catalog items to fetch per call.
+	 * @return An iterator over the catalog items. Close it to stop early.
+	 */
+	public PagedIterator<CatalogItem> iterateCatalogItems(final String name, int pageSize) {
+		return new PagedIterator<CatalogItem>(1, pageSize) {
+			@Override
+			protected List<CatalogItem> fetchPage(int page, int pageSize) {
+				return new ArrayList<CatalogItem>(POCClient.this.loadCatalogItems(name, page, pageSize));
+			}
+		};
+	}
+	
+	/**
+	 * Returns a stream of all catalog items matching a name. Pages are fetched as they are needed.
+	 * 
+	 * @param name Starting characters to match. All items returned if null.
+	 * @param pageSize Number of catalog items to fetch per call.
+	 * @return A stream of catalog items. Close it to stop early.
+	 */
+	public Stream<CatalogItem> streamCatalogItems(String name, int pageSize) {
+		return this.iterateCatalogItems(name, pageSize).stream();
+	}
+	
+	private Collection<CatalogItem> loadCatalogItems(String name, int pageNumber, int limit) {
+		ConsumerCatalogItemService catalogItemService = session.getCatalogItemService();
 		OdataQuery query = OdataQuery.query().addAscOrderBy("name");
 		if(name != null) 
 			query.addFilter(FilterParam.startsWith("name", "'" + name + "'"));
-		Pageable page = PageOdataRequest.page(1, limit, query);
+		Pageable page = PageOdataRequest.page(pageNumber, limit, query);
 		return catalogItemService.getCatalogItems(page).getContent();
 	}
 
@@ -116,12 +330,98 @@ public class POCClient {
 	 * @return
 	 */
 	public Collection<CatalogResource> getCatalogResources(String name, int limit) {
-		ConsumerResourceService consumerResourceService = new ConsumerResourceService(catalogClient);
+		return this.loadCatalogResources(name, 1, limit);
+	}
+	
+	/**
+	 * Returns an iterator over all catalog resources matching a name. Pages are fetched as they are needed.
+	 * 
+	 * @param name Starting characters to match. All resources returned if null.
+	 * @param pageSize Number of catalog resources to fetch per call.
+	 * @return An iterator over the catalog resources. Close it to stop early.
+	 */
+	public PagedIterator<CatalogResource> iterateCatalogResources(final String name, int pageSize) {
+		return new PagedIterator<CatalogResource>(1, pageSize) {
+			@Override
+			protected List<CatalogResource> fetchPage(int page, int pageSize) {
+				return new ArrayList<CatalogResource>(POCClient.this.loadCatalogResources(name, page, pageSize));
+			}
+		};
+	}
+	
+	/**
+	 * Returns a stream of all catalog resources matching a name. Pages are fetched as they are needed.
+	 * 
+	 * @param name Starting characters to match. All resources returned if null.
+	 * @param pageSize Number of catalog resources to fetch per call.
+	 * @return A stream of catalog resources. Close it to stop early.
+	 */
+	public Stream<CatalogResource> streamCatalogResources(String name, int pageSize) {
+		return this.iterateCatalogResources(name, pageSize).stream();
+	}
+	
+	/**
+	 * Returns an iterator over all catalog resources owned by a business group. Pages are fetched as they are needed.
+	 * 
+	 * @param businessGroupId The ID of the business group
+	 * @param pageSize Number of catalog resources to fetch per call.
+	 * @return An iterator over the catalog resources. Close it to stop early.
+	 */
+	public PagedIterator<CatalogResource> iterateCatalogResourcesByBusinessGroup(String businessGroupId, int pageSize) {
+		final OdataQuery query = OdataQuery.query().addAscOrderBy("name");
+		query.addFilter(FilterParam.equal("organization/subTenant/id", "'" + businessGroupId + "'"));
+		return new PagedIterator<CatalogResource>(1, pageSize) {
+			@Override
+			protected List<CatalogResource> fetchPage(int page, int pageSize) {
+				return new ArrayList<CatalogResource>(POCClient.this.loadCatalogResources(query, page, pageSize));
+			}
+		};
+	}
+	
+	/**
+	 * Returns an iterator over all catalog resources that have been updated after a point in time, oldest 
+	 * change first. Pages are fetched as they are needed.
+	 * 
+	 * The point in time is sent as a quoted ISO-8601 UTC timestamp with millisecond precision, e.g. 
+	 * <code>lastUpdated gt '2017-03-01T12:00:00.000Z'</code>, which is the format vRA uses for <code>lastUpdated</code> 
+	 * in its responses. This has not been verified against every vRA version, so callers should be prepared 
+	 * for the filter to be rejected.
+	 * 
+	 * @param since The point in time, in milliseconds since the epoch.
+	 * @param pageSize Number of catalog resources to fetch per call.
+	 * @return An iterator over the catalog resources. Close it to stop early.
+	 */
+	public PagedIterator<CatalogResource> iterateCatalogResourcesUpdatedSince(long since, int pageSize) {
+		final OdataQuery query = OdataQuery.query().addAscOrderBy("lastUpdated");
+		query.addFilter(FilterParam.greaterThan("lastUpdated", "'" + ODATA_TIMESTAMP.format(Instant.ofEpochMilli(since)) + "'"));
+		return new PagedIterator<CatalogResource>(1, pageSize) {
+			@Override
+			protected List<CatalogResource> fetchPage(int page, int pageSize) {
+				return new ArrayList<CatalogResource>(POCClient.this.loadCatalogResources(query, page, pageSize));
+			}
+		};
+	}
+	
+	private Collection<CatalogResource> loadCatalogResources(String name, int pageNumber, int limit) {
 		OdataQuery query = OdataQuery.query().addAscOrderBy("name");
 		if(name != null) 
 			query.addFilter(FilterParam.startsWith("name", "'" + name + "'"));
-		Pageable page = PageOdataRequest.page(1, limit, query);
-		return consumerResourceService.getResourcesList(true, true, page);
+		return this.loadCatalogResources(query, pageNumber, limit);
+	}
+	
+	private Collection<CatalogResource> loadCatalogResources(OdataQuery query, int pageNumber, int limit) {
+		ConsumerResourceService consumerResourceService = session.getResourceService();
+		Pageable page = PageOdataRequest.page(pageNumber, limit, query);
+		Collection<CatalogResource> resources = consumerResourceService.getResourcesList(true, true, page);
+		
+		// Remember the resource types so that day 2 operations can be resolved per type rather
+		// than per resource.
+		//
+		for(CatalogResource resource : resources) {
+			if(resource.getResourceTypeRef() != null)
+				operationCatalog.registerResourceType(resource.getId(), resource.getResourceTypeRef().getId());
+		}
+		return resources;
 	}
 	
 	/**
@@ -132,12 +432,51 @@ public class POCClient {
 	 * @param limit Maximum number of business groups to return.
 	 * @return
 	 */
-	public Set<Subtenant> getBusinessGroups(String tenantId, String name, int limit) {
-		SubtenantService subtenantService = new SubtenantService(identityClient);
+	public Set<Subtenant> getBusinessGroups(final String tenantId, final String name, final int limit) {
+		Collection<Subtenant> result = this.cachedLookup(new LookupKey(tenantId, "businessGroup", name, limit), new Callable<Collection<Subtenant>>() {
+			@Override
+			public Collection<Subtenant> call() {
+				return Collections.unmodifiableSet(POCClient.this.loadBusinessGroups(tenantId, name, 1, limit));
+			}
+		});
+		return (Set<Subtenant>) result;
+	}
+	
+	/**
+	 * Returns an iterator over all business groups of a tenant matching a name. Pages are fetched as they are needed.
+	 * 
+	 * @param tenantId The id of a tenant
+	 * @param name Name to match. Passing null returns all business groups for a tenant.
+	 * @param pageSize Number of business groups to fetch per call.
+	 * @return An iterator over the business groups. Close it to stop early.
+	 */
+	public PagedIterator<Subtenant> iterateBusinessGroups(final String tenantId, final String name, int pageSize) {
+		return new PagedIterator<Subtenant>(1, pageSize) {
+			@Override
+			protected List<Subtenant> fetchPage(int page, int pageSize) {
+				return new ArrayList<Subtenant>(POCClient.this.loadBusinessGroups(tenantId, name, page, pageSize));
+			}
+		};
+	}
+	
+	/**
+	 * Returns a stream of all business groups of a tenant matching a name. Pages are fetched as they are needed.
+	 * 
+	 * @param tenantId The id of a tenant
+	 * @param name Name to match. Passing null returns all business groups for a tenant.
+	 * @param pageSize Number of business groups to fetch per call.
+	 * @return A stream of business groups. Close it to stop early.
+	 */
+	public Stream<Subtenant> streamBusinessGroups(String tenantId, String name, int pageSize) {
+		return this.iterateBusinessGroups(tenantId, name, pageSize).stream();
+	}
+	
+	private Set<Subtenant> loadBusinessGroups(String tenantId, String name, int pageNumber, int limit) {
+		SubtenantService subtenantService = session.getSubtenantService();
 		OdataQuery query = OdataQuery.query().addAscOrderBy("name");
 		if(name != null) 
 			query.addFilter(FilterParam.startsWith("name", "'" + name + "'"));
-		Pageable page = PageOdataRequest.page(1, limit, query);
+		Pageable page = PageOdataRequest.page(pageNumber, limit, query);
 		return subtenantService.getSubtenants(tenantId, page);
 	}
 	
@@ -147,43 +486,70 @@ public class POCClient {
 	 * @return A list of day 2 operations.
 	 */
 	public Collection<ConsumerResourceOperation> getDay2Operations(String resourceId) {
-		ConsumerResourceService resourceService = new ConsumerResourceService(catalogClient);
+		ConsumerResourceService resourceService = session.getResourceService();
 		return resourceService.getAvailableOperations(resourceId);
 	}
 	/**
 	 * Returns a day 2 operation on an existing resource based on its resource id and 
-	 * operation id.
+	 * operation id. Operations are resolved through the operation catalog, so this
+	 * doesn't necessarily mean that the operation is available in the current state of the resource.
 	 * @param resourceId The resource ID
 	 * @param opId The operation ID
 	 * @return A day 2 operation
 	 */
 	public ConsumerResourceOperation getDay2OperationById(String resourceId, String opId) {
-		ConsumerResourceService resourceService = new ConsumerResourceService(catalogClient);
-		Collection<ConsumerResourceOperation> ops = this.getDay2Operations(resourceId);
-		for(ConsumerResourceOperation op : ops) {
-			if(opId.equals(op.getBindingId())) {
-				return op;
-			}
-		}
-		return null;
+		return operationCatalog.getByBindingId(resourceId, opId);
 	}
 	
 	/**
 	 * Returns a day 2 operation on an existing resource based on its resource id and 
-	 * operation name.
+	 * operation name. Operations are resolved through the operation catalog, so this
+	 * doesn't necessarily mean that the operation is available in the current state of the resource.
 	 * @param resourceId The resource ID
 	 * @param opName The operation name
 	 * @return A day 2 operation
 	 */
 	public ConsumerResourceOperation getDay2OperationByName(String resourceId, String opName) {
-		ConsumerResourceService resourceService = new ConsumerResourceService(catalogClient);
-		Collection<ConsumerResourceOperation> ops = this.getDay2Operations(resourceId);
-		for(ConsumerResourceOperation op : ops) {
-			if(opName.equals(op.getName())) {
-				return op;
-			}
-		}
-		return null;
+		return operationCatalog.getByName(resourceId, opName);
+	}
+	
+	/**
+	 * Removes all cached provisioning request templates for a catalog item. Call this if
+	 * the blueprint behind the catalog item has changed and the change needs to be seen immediately.
+	 * @param catalogItemId The ID of the catalog item.
+	 */
+	public void invalidateTemplates(String catalogItemId) {
+		templateCache.invalidate(catalogItemId);
+	}
+	
+	/**
+	 * Removes all cached provisioning request templates.
+	 */
+	public void invalidateTemplates() {
+		templateCache.invalidateAll();
+	}
+	
+	/**
+	 * Returns statistics for the provisioning request template cache.
+	 * @return
+	 */
+	public CacheStats getTemplateCacheStats() {
+		return templateCache.getStats();
+	}
+	
+	/**
+	 * Clears all cached day 2 operations. Call this if entitlements have changed.
+	 */
+	public void invalidateOperationCatalog() {
+		operationCatalog.invalidate();
+	}
+	
+	/**
+	 * Returns statistics for the day 2 operation catalog.
+	 * @return
+	 */
+	public CacheStats getOperationCatalogStats() {
+		return operationCatalog.getStats();
 	}
 	
 	/**
@@ -192,7 +558,7 @@ public class POCClient {
 	 * @return
 	 */
 	public Request getRequestFromURI(URI uri) {
-		ConsumerRequestService requestService = new ConsumerRequestService(catalogClient);
+		ConsumerRequestService requestService = session.getRequestService();
 		return requestService.getRequest(uri);
 	}
 	
@@ -208,12 +574,11 @@ public class POCClient {
 	 */
 	public URI requestMachine(String catalogItemId, String businessGroupId, Map<String, MachineConfiguration> config, Map<String, Object> customProperties) {
 		// Fetch a template request. Requests are complex and highly dynamic, so it's a best 
-		// practice to start from a template.
+		// practice to start from a template. Templates are cached, and what we get back
+		// is a copy that we're free to modify.
 		//
-		ConsumerEntitledCatalogItemService entitledItemsService = new ConsumerEntitledCatalogItemService(catalogClient);
-		CatalogItemProvisioningRequest request = entitledItemsService.getTemplateCatalogItemProvisioningRequest(catalogItemId);
-		if(businessGroupId != null)
-			request.setBusinessGroupId(businessGroupId);
+		ConsumerEntitledCatalogItemService entitledItemsService = session.getEntitledCatalogItemService();
+		CatalogItemProvisioningRequest request = templateCache.getRequest(catalogItemId, businessGroupId);
 		
 		// Iterate through the configurations (if specified) and try to find the corresponding
 		// item in the request. Thus, if config is empty, we will retain the default values.
@@ -224,10 +589,85 @@ public class POCClient {
 		if(config != null) {
 			this.applyConfiguration(config, customProperties, data);
 		}
-		System.out.println(data);
 		return entitledItemsService.submitCatalogItemProvisionRequest(request);
 	}
 	
+	/**
+	 * Requests the provisioning of a number of machines in parallel. Submissions to the tenant are limited
+	 * by the provisioning concurrency (see {@link #setProvisioningConcurrency(int)}) and the results are 
+	 * returned in the order they complete. A failure to submit one machine doesn't affect the others.
+	 * 
+	 * @param specs The machines to provision.
+	 * @return The results, in the order they complete. Calls to next() block until a result is available.
+	 */
+	public Iterator<ProvisionResult> requestMachines(List<ProvisionSpec> specs) {
+		final TenantThrottle throttle = TenantThrottle.forTenant(tenant);
+		final int total = specs.size();
+		if(total == 0) 
+			return Collections.<ProvisionResult>emptyList().iterator();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(total, throttle.getLimit()), new DaemonThreadFactory("vra-provision"));
+		final CompletionService<ProvisionResult> completion = new ExecutorCompletionService<ProvisionResult>(executor);
+		for(final ProvisionSpec spec : specs) {
+			completion.submit(new Callable<ProvisionResult>() {
+				@Override
+				public ProvisionResult call() throws InterruptedException {
+					throttle.acquire();
+					try {
+						URI uri = POCClient.this.requestMachine(spec.getCatalogItemId(), spec.getBusinessGroupId(), spec.getConfig(), spec.getCustomProperties());
+						return new ProvisionResult(spec, uri, null);
+					} catch(RuntimeException e) {
+						return new ProvisionResult(spec, null, e);
+					} finally {
+						throttle.release();
+					}
+				}
+			});
+		}
+		
+		// Everything is queued. The threads go away once the queue is drained.
+		//
+		executor.shutdown();
+		return new Iterator<ProvisionResult>() {
+			private int returned;
+			
+			@Override
+			public boolean hasNext() {
+				return returned < total;
+			}
+
+			@Override
+			public ProvisionResult next() {
+				if(returned >= total)
+					throw new NoSuchElementException();
+				try {
+					ProvisionResult result = completion.take().get();
+					++returned;
+					return result;
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while waiting for provisioning results", e);
+				} catch(ExecutionException e) {
+					throw new IllegalStateException("Provisioning task failed", e.getCause());
+				}
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+	
+	/**
+	 * Sets the maximum number of concurrent provisioning submissions for the tenant of this client.
+	 * The limit is shared with any other client in this JVM working against the same tenant.
+	 * 
+	 * @param maxConcurrent The maximum number of concurrent submissions.
+	 */
+	public void setProvisioningConcurrency(int maxConcurrent) {
+		TenantThrottle.forTenant(tenant).setLimit(maxConcurrent);
+	}
+	
 	public URI requestCustomResource(String catalogItemName, String tenantName, String businessGroupName, LiteralMap parameters) {
 		Collection<Subtenant> bgs = this.getBusinessGroups(tenantName, businessGroupName, 1);
 		if(bgs.size() == 0)
@@ -235,9 +675,20 @@ public class POCClient {
 		Collection<CatalogItem> items = this.getCatalogItems(catalogItemName, 1);
 		if(items.size() == 0)
 			throw new IllegalArgumentException("Catalog item " + catalogItemName + " not found");
-		Subtenant bg = bgs.iterator().next();
-		CatalogItem item = items.iterator().next();
-		ConsumerRequestService requestClient = new ConsumerRequestService(catalogClient);
+		return this.requestCustomResource(items.iterator().next(), bgs.iterator().next(), tenantName, parameters);
+	}
+	
+	/**
+	 * Requests a custom resource from an already resolved catalog item and business group.
+	 * 
+	 * @param item The catalog item to request.
+	 * @param bg The business group to request it for.
+	 * @param tenantName The name of the tenant.
+	 * @param parameters Request parameters.
+	 * @return
+	 */
+	protected URI requestCustomResource(CatalogItem item, Subtenant bg, String tenantName, LiteralMap parameters) {
+		ConsumerRequestService requestClient = session.getRequestService();
 		CatalogItemRequest request = new CatalogItemRequest();
 		request.setCatalogItemRef(new LabelledReference(item.getId(), item.getName()));
 		CatalogOrganizationReference org = new CatalogOrganizationReference();
@@ -246,13 +697,6 @@ public class POCClient {
 		request.setOrganization(org);
 		request.setState(RequestState.SUBMITTED);
 		request.setRequestData(parameters);
-		
-		try {
-			System.out.println(new ObjectMapper().writeValueAsString(request));
-		} catch (JsonProcessingException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
 		return requestClient.createRequest(request);
 	}
 	
@@ -266,16 +710,13 @@ public class POCClient {
 	 */
 	public URI requestMachineChange(String machineId, MachineConfiguration config, boolean allowShutdown) {
 		CatalogResourceRequest request = this.getTemplate(machineId, "Infrastructure.Machine.Action.Reconfigure");
-		Map<String, Object> data = request.getData();
-		data.put("cpu", config.getNumCPUs());
-		data.put("memory", config.getMemoryMB());
-		data.put("allowForceShutdown", allowShutdown); // Allow shutdown
-		List<Map<String, Map<String, Object>>> disks = (List<Map<String, Map<String, Object>>>) data.get("disks");
-		disks.get(0).get("data").put("size", config.getDiskGB());
-		data.put("Cafe.Shim.VirtualMachine.Reconfigure.AllowForceShutdown", allowShutdown ? "True" : "False");
-		data.put("Cafe.Shim.VirtualMachine.Reconfigure.Requestor", 1);
-		//data.put("executionSelector", 1); // Immediate shutdown
-		data.put("powerActionSelector", 0); // Power-off allowed
+		Object[] args = new Object[RECONFIGURE_PLAN.getArgCount()];
+		args[RECONFIGURE_CPU] = config.getNumCPUs();
+		args[RECONFIGURE_MEMORY] = config.getMemoryMB();
+		args[RECONFIGURE_ALLOW_SHUTDOWN] = allowShutdown;
+		args[RECONFIGURE_DISK] = config.getDiskGB();
+		args[RECONFIGURE_FORCE_SHUTDOWN] = allowShutdown ? "True" : "False";
+		reconfigurePlan.apply(request.getData(), args);
 		return this.submitResourceRequest(machineId, request);
 	}
 	
@@ -284,8 +725,7 @@ public class POCClient {
 		// Update vR Ops grouping
 		//
 		Map<String, Object> payload = new HashMap<String, Object>();
-		ObjectMapper om = new ObjectMapper();
-		payload.put("properties", om.writer().writeValueAsString(properties));
+		payload.put("properties", mapper.writer().writeValueAsString(properties));
 		this.submitCustomRequest(machineId, "Refresh vR Ops grouping", payload);
 		
 		// Update the properties in vRA
@@ -336,6 +776,8 @@ public class POCClient {
 	 */
 	public URI submitCustomRequest(String machineId, String operationName, Map<String, Object> rqData) {
 		ConsumerResourceOperation op = this.getDay2OperationByName(machineId, operationName);
+		if(op == null) 
+			throw new IllegalStateException("Operation " + operationName + " not found");
 		CatalogResourceRequest request = new CatalogResourceRequest();
 		request.setActionId(op.getId());
 		request.setResourceId(machineId);
@@ -353,7 +795,13 @@ public class POCClient {
 	 * @return
 	 */
 	public boolean isChangePending(String machineId) {
-		return this.getDay2OperationById(machineId, "Infrastructure.Machine.Action.ExecuteReconfigure") != null;
+		// This depends on the current state of the machine, so we can't use the operation catalog.
+		//
+		for(ConsumerResourceOperation op : this.getDay2Operations(machineId)) {
+			if("Infrastructure.Machine.Action.ExecuteReconfigure".equals(op.getBindingId()))
+				return true;
+		}
+		return false;
 	}
 	
 	/**
@@ -396,8 +844,17 @@ public class POCClient {
 	 * @param limit Maximum number of reservation policies to return
 	 * @return A list of reservation policies.
 	 */
-	public Collection<ReservationPolicy> getReservationPolicies(String name, int limit) {
-		ReservationPolicyService reservationPolicyService = new ReservationPolicyService(reservationClient);
+	public Collection<ReservationPolicy> getReservationPolicies(final String name, final int limit) {
+		return this.cachedLookup(new LookupKey(tenant, "reservationPolicy", name, limit), new Callable<Collection<ReservationPolicy>>() {
+			@Override
+			public Collection<ReservationPolicy> call() {
+				return Collections.unmodifiableCollection(POCClient.this.loadReservationPolicies(name, limit));
+			}
+		});
+	}
+	
+	private Collection<ReservationPolicy> loadReservationPolicies(String name, int limit) {
+		ReservationPolicyService reservationPolicyService = session.getReservationPolicyService();
 		OdataQuery query = OdataQuery.query().addAscOrderBy("name");
 		if(name != null) 
 			query.addFilter(FilterParam.startsWith("name", "'" + name + "'"));
@@ -405,6 +862,23 @@ public class POCClient {
 		return reservationPolicyService.getAllReservationPolicies(page).getContent();
 	}
 	
+	/**
+	 * Returns statistics for the cache used by getCatalogItems, getBusinessGroups and
+	 * getReservationPolicies.
+	 * @return A snapshot of the lookup cache statistics.
+	 */
+	public CacheStats getLookupCacheStats() {
+		return lookupCache.getStats();
+	}
+	
+	/**
+	 * Clears all cached catalog item, business group and reservation policy lookups. Call this
+	 * if any of them have been changed and the change needs to be seen before the cached entries expire.
+	 */
+	public void invalidateLookupCache() {
+		lookupCache.invalidateAll();
+	}
+	
 	/**
 	 * Returns a map of detailed machine information.
 	 * 
@@ -412,7 +886,84 @@ public class POCClient {
 	 * @return
 	 */
 	public Map<String, Object> getMachineDetails(String machineId) {
-		return catalogClient.get("/consumer/resourceViews/" + machineId, HashMap.class);
+		return session.getCatalogClient().get("/consumer/resourceViews/" + machineId, HashMap.class);
+	}
+	
+	/**
+	 * Returns selected fields from the details of a machine. Only the requested fields are 
+	 * parsed, which is much cheaper than {@link #getMachineDetails(String)} when only a few are needed.
+	 * 
+	 * @param machineId The machine ID to obtain information for.
+	 * @param fields The fields to return, e.g. {@link MachineDetails#CPU}.
+	 * @return
+	 */
+	public MachineDetails getMachineDetails(String machineId, String... fields) {
+		String json = session.getCatalogClient().get("/consumer/resourceViews/" + machineId, String.class);
+		try {
+			return MachineDetails.parse(json, fields);
+		} catch(IOException e) {
+			throw new UncheckedIOException("Unable to parse resource view of " + machineId, e);
+		}
+	}
+	
+	/**
+	 * Returns selected fields from the details of a number of machines. The machines are fetched in parallel
+	 * on a thread pool shared by all calls on this client.
+	 * 
+	 * @param machineIds The machine IDs to obtain information for.
+	 * @param fields The fields to return, e.g. {@link MachineDetails#CPU}.
+	 * @return The details by machine ID.
+	 */
+	public Map<String, MachineDetails> getMachineDetails(Collection<String> machineIds, final String... fields) {
+		Map<String, MachineDetails> result = new HashMap<String, MachineDetails>(machineIds.size() * 2);
+		if(machineIds.isEmpty())
+			return result;
+		final TenantThrottle throttle = TenantThrottle.forTenant(tenant);
+		Map<String, Future<MachineDetails>> futures = new HashMap<String, Future<MachineDetails>>(machineIds.size() * 2);
+		try {
+			for(final String machineId : machineIds) {
+				futures.put(machineId, detailsExecutor.submit(new Callable<MachineDetails>() {
+					@Override
+					public MachineDetails call() throws InterruptedException {
+						throttle.acquire();
+						try {
+							return POCClient.this.getMachineDetails(machineId, fields);
+						} finally {
+							throttle.release();
+						}
+					}
+				}));
+			}
+			for(Map.Entry<String, Future<MachineDetails>> entry : futures.entrySet()) {
+				try {
+					result.put(entry.getKey(), entry.getValue().get());
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while fetching machine details", e);
+				} catch(ExecutionException e) {
+					if(e.getCause() instanceof RuntimeException)
+						throw (RuntimeException) e.getCause();
+					throw new IllegalStateException("Unable to fetch details of " + entry.getKey(), e.getCause());
+				}
+			}
+			return result;
+		} finally {
+			// Don't leave work behind if we're bailing out early
+			//
+			for(Future<MachineDetails> future : futures.values())
+				future.cancel(true);
+		}
+	}
+	
+	/**
+	 * Creates a tracker that waits for requests returned by e.g. requestMachine, requestCustomResource
+	 * or any of the day 2 operations to complete. Use one tracker for all outstanding requests,
+	 * since that allows it to check on many requests in a single call.
+	 * 
+	 * @return A new request tracker. Call shutdown() on it when it's no longer needed.
+	 */
+	public RequestTracker createRequestTracker() {
+		return new RequestTracker(session.getCatalogClient());
 	}
 	
 	/**
@@ -427,6 +978,15 @@ public class POCClient {
 	}
 	
 	public URI requestMigration(String vCenterHost, String tenant, String businessGroup, String username, String password, String sourceName, String targetName, String folder, String cluster, String storage, String network, int cpu, int memory) {
+		LiteralMap parameters = this.createMigrationParameters(vCenterHost, username, password, sourceName, targetName, folder, cluster, storage, network, cpu, memory);
+		return this.requestCustomResource(MIGRATION_CATALOG_ITEM, tenant, businessGroup, parameters);
+	}
+	
+	/**
+	 * Builds the request parameters for a migration.
+	 * @return
+	 */
+	protected LiteralMap createMigrationParameters(String vCenterHost, String username, String password, String sourceName, String targetName, String folder, String cluster, String storage, String network, int cpu, int memory) {
 		LiteralMap parameters = new LiteralMap();
 		//Map<String, Object> parameters = new HashMap<String, Object>();
 		parameters.put("provider-sourceVCenterUser", new StringLiteral(username));
@@ -444,7 +1004,7 @@ public class POCClient {
 		parameters.put("provider-sourceVCName", new StringLiteral(vCenterHost)); 
 		parameters.put("provider-targetVMName", new StringLiteral(targetName));
 		parameters.put("provider-sourceVMName", new StringLiteral(sourceName));
-		return this.requestCustomResource("Migrate Legacy VM (API friendly)", tenant, businessGroup, parameters);
+		return parameters;
 	}
 	
 	/**
@@ -456,18 +1016,25 @@ public class POCClient {
 	 */
 	protected void applyConfiguration(Map<String, MachineConfiguration> config,
 			Map<String, Object> customProperties, Map<String, Object> data) {
-		for(Map.Entry<String, MachineConfiguration> element : config.entrySet()) {
-			Object o = data.get(element.getKey());
-			if(o == null)
-				throw new IllegalStateException("Element " + element.getKey() + " not found in template"); 
-			Map<String, Object> machineConfig = ((Map<String, Map<String, Object>>) o).get("data");
-			machineConfig.put("cpu", element.getValue().getNumCPUs());
-			machineConfig.put("memory", element.getValue().getMemoryMB());
-			if(customProperties != null) {
-				for(Map.Entry<String, Object> property : customProperties.entrySet()) 
-					machineConfig.put(property.getKey(), property.getValue());
+		// The plan only depends on which elements we configure, so sort them to get a stable
+		// key and argument order.
+		//
+		final List<String> elements = new ArrayList<String>(config.keySet());
+		Collections.sort(elements);
+		ProvisionPlan plan = provisionPlans.get(elements, new Callable<ProvisionPlan>() {
+			@Override
+			public ProvisionPlan call() {
+				return new ProvisionPlan(elements);
 			}
+		});
+		Object[] args = new Object[plan.argCount];
+		for(int i = 0; i < elements.size(); ++i) {
+			MachineConfiguration machineConfig = config.get(elements.get(i));
+			args[plan.cpuArgs[i]] = machineConfig.getNumCPUs();
+			args[plan.memoryArgs[i]] = machineConfig.getMemoryMB();
+			args[plan.propertyArgs[i]] = customProperties;
 		}
+		plan.apply(data, args);
 	}
 	
 	/**
@@ -477,7 +1044,7 @@ public class POCClient {
 	 * @return
 	 */
 	protected CatalogResourceRequest getTemplate(String machineId, String operationName) {
-		ConsumerResourceService resourceService = new ConsumerResourceService(catalogClient);
+		ConsumerResourceService resourceService = session.getResourceService();
 		ConsumerResourceOperation op = this.getDay2OperationById(machineId, operationName);
 		if(op == null) 
 			throw new IllegalStateException("Operation " + operationName + " not found");
@@ -492,13 +1059,24 @@ public class POCClient {
 	 */
 	protected URI submitResourceRequest(String machineId,
 			CatalogResourceRequest request) {
-		Map<String, Object> payload = new HashMap<String, Object>();
-		payload.put("resourceId", request.getResourceId());
-		payload.put("actionId", request.getActionId());
-		payload.put("description", request.getDescription());
-		payload.put("data", request.getData());
-		payload.put("type", "com.vmware.vcac.catalog.domain.request.CatalogResourceRequest");	
-		return catalogClient.post("consumer/resources/" + machineId + "/actions/" + request.getActionId() + "/requests", payload);
+		return session.getCatalogClient().post("consumer/resources/" + machineId + "/actions/" + request.getActionId() + "/requests", new ResourceRequestPayload(request));
+	}
+	
+	/**
+	 * Runs a name based lookup through the lookup cache.
+	 * @param key The cache key
+	 * @param loader Loads the result from vRA on a cache miss.
+	 * @return
+	 */
+	private <T> Collection<T> cachedLookup(LookupKey key, Callable<? extends Collection<T>> loader) {
+		// A loader only ever returns Collection<T>, so widening it to Collection<?> is safe
+		@SuppressWarnings("unchecked")
+		Callable<Collection<?>> untyped = (Callable<Collection<?>>) (Callable<?>) loader;
+
+		// The key includes the lookup type, so an entry was always loaded by a loader of the same type
+		@SuppressWarnings("unchecked")
+		Collection<T> result = (Collection<T>) lookupCache.get(key, untyped);
+		return result;
 	}
 	
 	protected LiteralMap convertPropertiesToLiteralMap(Map<String, Object> properties) {
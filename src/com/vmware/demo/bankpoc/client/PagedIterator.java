@@ -0,0 +1,153 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates over a paginated result, fetching pages as they are needed. While the caller 
+ * works through one page, the next one is fetched in the background.
+ * 
+ * Call {@link #close()} (or close the stream returned by {@link #stream()}) to stop early.
+ * That cancels any page being prefetched and no further pages are fetched.
+ * 
+ * @param <T> The type of item
+ */
+public abstract class PagedIterator<T> implements Iterator<T>, Closeable {
+	private static final ExecutorService prefetcher = Executors.newCachedThreadPool(new DaemonThreadFactory("page-prefetch"));
+	
+	private final int pageSize;
+	
+	private int nextPage;
+	
+	private Iterator<T> current = Collections.<T>emptyList().iterator();
+	
+	private Future<List<T>> prefetched;
+	
+	private boolean exhausted;
+	
+	private volatile boolean closed;
+	
+	/**
+	 * Creates a new iterator.
+	 * @param firstPage The number of the first page. Some APIs count from 0 and some from 1.
+	 * @param pageSize The number of items to fetch per page.
+	 */
+	public PagedIterator(int firstPage, int pageSize) {
+		if(pageSize < 1)
+			throw new IllegalArgumentException("Page size must be at least 1");
+		this.nextPage = firstPage;
+		this.pageSize = pageSize;
+	}
+	
+	/**
+	 * Fetches a page.
+	 * 
+	 * @param page The page number
+	 * @param pageSize The page size
+	 * @return The items on the page. A page with fewer items than the page size is assumed to be the last one.
+	 */
+	protected abstract List<T> fetchPage(int page, int pageSize);
+	
+	@Override
+	public boolean hasNext() {
+		while(!current.hasNext()) {
+			if(exhausted || closed)
+				return false;
+			this.advance();
+		}
+		return true;
+	}
+
+	@Override
+	public T next() {
+		if(!this.hasNext())
+			throw new NoSuchElementException();
+		return current.next();
+	}
+	
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * Stops the iteration. Any page that's being prefetched is abandoned.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		if(prefetched != null) 
+			prefetched.cancel(true);
+	}
+	
+	/**
+	 * Returns a sequential stream over the remaining items. Closing the stream closes this iterator.
+	 * @return
+	 */
+	public Stream<T> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(new Runnable() {
+					@Override
+					public void run() {
+						PagedIterator.this.close();
+					}
+				});
+	}
+	
+	private void advance() {
+		List<T> page;
+		if(prefetched != null) {
+			try {
+				page = prefetched.get();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while fetching page", e);
+			} catch(ExecutionException e) {
+				Throwable cause = e.getCause();
+				if(cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				throw new IllegalStateException("Error fetching page", cause);
+			} finally {
+				prefetched = null;
+			}
+		} else 
+			page = this.fetchPage(nextPage++, pageSize);
+		current = page.iterator();
+		if(page.size() < pageSize) {
+			exhausted = true;
+			return;
+		}
+		
+		// There's probably more. Start fetching the next page while this one is being processed.
+		//
+		final int pageNumber = nextPage++;
+		prefetched = prefetcher.submit(new Callable<List<T>>() {
+			@Override
+			public List<T> call() {
+				return PagedIterator.this.fetchPage(pageNumber, pageSize);
+			}
+		});
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.net.URI;
+
+/**
+ * The outcome of submitting a single machine in a bulk request. Holds either the URI of
+ * the submitted request or the error that prevented it from being submitted.
+ */
+public class ProvisionResult {
+	private final ProvisionSpec spec;
+	
+	private final URI requestUri;
+	
+	private final RuntimeException error;
+
+	public ProvisionResult(ProvisionSpec spec, URI requestUri, RuntimeException error) {
+		super();
+		this.spec = spec;
+		this.requestUri = requestUri;
+		this.error = error;
+	}
+
+	public ProvisionSpec getSpec() {
+		return spec;
+	}
+
+	public URI getRequestUri() {
+		return requestUri;
+	}
+
+	public RuntimeException getError() {
+		return error;
+	}
+	
+	public boolean isSuccessful() {
+		return error == null;
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.util.Map;
+
+/**
+ * Describes a single machine to provision as part of a bulk request.
+ */
+public class ProvisionSpec {
+	private final String catalogItemId;
+	
+	private final String businessGroupId;
+	
+	private final Map<String, MachineConfiguration> config;
+	
+	private final Map<String, Object> customProperties;
+
+	/**
+	 * Creates a new provisioning spec. The parameters are the same as for {@link POCClient#requestMachine(String, String, Map, Map)}
+	 * 
+	 * @param catalogItemId The ID of the catalog item to provision.
+	 * @param businessGroupId The business group to place the machine in. If null, the machine goes in the default business group of the blueprint.
+	 * @param config The machine configuration.
+	 * @param customProperties Custom properties (if any). Can be null if no custom properties are needed.
+	 */
+	public ProvisionSpec(String catalogItemId, String businessGroupId,
+			Map<String, MachineConfiguration> config, Map<String, Object> customProperties) {
+		super();
+		this.catalogItemId = catalogItemId;
+		this.businessGroupId = businessGroupId;
+		this.config = config;
+		this.customProperties = customProperties;
+	}
+
+	public String getCatalogItemId() {
+		return catalogItemId;
+	}
+
+	public String getBusinessGroupId() {
+		return businessGroupId;
+	}
+
+	public Map<String, MachineConfiguration> getConfig() {
+		return config;
+	}
+
+	public Map<String, Object> getCustomProperties() {
+		return customProperties;
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.util.Arrays;
+
+/**
+ * Estimates quantiles of a stream of non-negative values in constant memory. Values are counted in
+ * logarithmically sized buckets, so any quantile is returned within a fixed relative error of the
+ * true value, and two sketches with the same accuracy can be merged by adding up their buckets. 
+ * This is the same approach as DDSketch. Not thread safe.
+ */
+public class QuantileSketch {
+	private static final double DEFAULT_ACCURACY = 0.01;
+	
+	/**
+	 * The smallest value that gets a bucket of its own. Anything smaller is counted as zero.
+	 */
+	private static final double MIN_VALUE = 1e-9;
+	
+	private final double accuracy;
+	
+	private final double logGamma;
+	
+	private long[] counts = new long[0];
+	
+	private int offset;
+	
+	private long zeroCount;
+	
+	private long count;
+	
+	private double min = Double.NaN;
+	
+	private double max = Double.NaN;
+	
+	public QuantileSketch() {
+		this(DEFAULT_ACCURACY);
+	}
+	
+	/**
+	 * Creates a new sketch.
+	 * @param accuracy The relative accuracy, e.g. 0.01 for 1%.
+	 */
+	public QuantileSketch(double accuracy) {
+		if(accuracy <= 0 || accuracy >= 1)
+			throw new IllegalArgumentException("Accuracy must be between 0 and 1");
+		this.accuracy = accuracy;
+		logGamma = Math.log((1 + accuracy) / (1 - accuracy));
+	}
+	
+	/**
+	 * Adds a value. Negative values are counted as zero.
+	 * @param value The value
+	 */
+	public void add(double value) {
+		if(Double.isNaN(value))
+			return;
+		min = count == 0 ? value : Math.min(min, value);
+		max = count == 0 ? value : Math.max(max, value);
+		++count;
+		if(value < MIN_VALUE) {
+			++zeroCount;
+			return;
+		}
+		int index = (int) Math.ceil(Math.log(value) / logGamma);
+		this.ensureBucket(index);
+		++counts[index - offset];
+	}
+	
+	/**
+	 * Adds all values counted by another sketch to this one.
+	 * @param other The sketch to merge. Must have the same accuracy.
+	 */
+	public void merge(QuantileSketch other) {
+		if(other.accuracy != accuracy)
+			throw new IllegalArgumentException("Can't merge sketches with different accuracy");
+		if(other.count == 0)
+			return;
+		if(other.counts.length > 0) {
+			this.ensureBucket(other.offset);
+			this.ensureBucket(other.offset + other.counts.length - 1);
+			for(int i = 0; i < other.counts.length; ++i)
+				counts[other.offset + i - offset] += other.counts[i];
+		}
+		min = count == 0 ? other.min : Math.min(min, other.min);
+		max = count == 0 ? other.max : Math.max(max, other.max);
+		zeroCount += other.zeroCount;
+		count += other.count;
+	}
+	
+	/**
+	 * Returns an estimate of a quantile.
+	 * @param quantile The quantile, between 0 and 1, e.g. 0.95 for the 95th percentile.
+	 * @return The estimate, or NaN if no values have been added.
+	 */
+	public double getQuantile(double quantile) {
+		if(quantile < 0 || quantile > 1)
+			throw new IllegalArgumentException("Quantile must be between 0 and 1");
+		if(count == 0)
+			return Double.NaN;
+		long rank = (long) (quantile * (count - 1));
+		if(rank < zeroCount)
+			return Math.max(min, 0.0);
+		long seen = zeroCount;
+		for(int i = 0; i < counts.length; ++i) {
+			seen += counts[i];
+			if(seen > rank) {
+				// Return the middle of the bucket, which is within the accuracy of any value in it.
+				//
+				double estimate = 2 * Math.exp((i + offset) * logGamma) / (1 + Math.exp(logGamma));
+				return Math.max(min, Math.min(max, estimate));
+			}
+		}
+		return max;
+	}
+	
+	public long getCount() {
+		return count;
+	}
+	
+	public double getMin() {
+		return min;
+	}
+	
+	public double getMax() {
+		return max;
+	}
+	
+	private void ensureBucket(int index) {
+		if(counts.length == 0) {
+			counts = new long[16];
+			offset = index - 8;
+			return;
+		}
+		if(index < offset) {
+			int grow = Math.max(offset - index, counts.length / 2);
+			long[] grown = new long[counts.length + grow];
+			System.arraycopy(counts, 0, grown, grow, counts.length);
+			counts = grown;
+			offset -= grow;
+		} else if(index >= offset + counts.length)
+			counts = Arrays.copyOf(counts, Math.max(index - offset + 1, counts.length + counts.length / 2));
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.net.URI;
+
+/**
+ * The final state of a request tracked by a {@link RequestTracker}.
+ */
+public class RequestOutcome {
+	private final String requestId;
+	
+	private final URI requestUri;
+	
+	private final String state;
+
+	public RequestOutcome(String requestId, URI requestUri, String state) {
+		super();
+		this.requestId = requestId;
+		this.requestUri = requestUri;
+		this.state = state;
+	}
+
+	public String getRequestId() {
+		return requestId;
+	}
+
+	public URI getRequestUri() {
+		return requestUri;
+	}
+
+	/**
+	 * Returns the final state of the request, e.g. SUCCESSFUL or FAILED.
+	 * @return
+	 */
+	public String getState() {
+		return state;
+	}
+	
+	public boolean isSuccessful() {
+		return "SUCCESSFUL".equals(state);
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of edits to the data of a request, checked against a request template once and then applied
+ * to any number of requests based on the same template.
+ * 
+ * A path is a sequence of map keys (strings) and list indexes (integers). The last step of a path is the
+ * key to set and everything before it must lead to a map in the template, otherwise the plan fails to
+ * compile and says which part of the path is missing. Edits to the same map are grouped, so applying a 
+ * plan navigates to each map only once. Values are either constants or arguments passed when the plan 
+ * is applied. Paths are given as arrays rather than dotted strings since property names often contain dots.
+ * 
+ * <pre>
+ * RequestPatchPlan.Builder builder = new RequestPatchPlan.Builder();
+ * builder.bind(RequestPatchPlan.path("cpu"));
+ * builder.bind(RequestPatchPlan.path("disks", 0, "data", "size"));
+ * RequestPatchPlan plan = builder.compile(template.getData());
+ * plan.apply(request.getData(), 2, 100);
+ * </pre>
+ */
+public class RequestPatchPlan {
+	/**
+	 * Collects the edits of a plan.
+	 */
+	public static class Builder {
+		private final List<Object[]> paths = new ArrayList<Object[]>();
+		
+		private final List<Object> values = new ArrayList<Object>();
+		
+		private final List<Integer> args = new ArrayList<Integer>();
+		
+		private final List<Boolean> merges = new ArrayList<Boolean>();
+		
+		private int argCount;
+		
+		/**
+		 * Sets a value to a constant.
+		 * @param path The path of the value
+		 * @param value The value
+		 * @return This builder
+		 */
+		public Builder set(Object[] path, Object value) {
+			this.add(path, value, -1, false);
+			return this;
+		}
+		
+		/**
+		 * Sets a value to an argument given when the plan is applied.
+		 * @param path The path of the value
+		 * @return The position of the argument
+		 */
+		public int bind(Object[] path) {
+			this.add(path, null, argCount, false);
+			return argCount++;
+		}
+		
+		/**
+		 * Adds all entries of a map given when the plan is applied to the map at a path. The argument may be null.
+		 * @param path The path of the map to add entries to.
+		 * @return The position of the argument
+		 */
+		public int bindAll(Object[] path) {
+			this.add(path, null, argCount, true);
+			return argCount++;
+		}
+		
+		/**
+		 * Returns the number of arguments bound so far.
+		 * @return
+		 */
+		public int getArgCount() {
+			return argCount;
+		}
+		
+		/**
+		 * Checks the edits against a template and creates a plan.
+		 * @param template The data of the template
+		 * @return The plan
+		 * @throws IllegalStateException If a path doesn't exist in the template.
+		 */
+		public RequestPatchPlan compile(Map<String, Object> template) {
+			Map<List<Object>, Target> targets = new LinkedHashMap<List<Object>, Target>();
+			for(int i = 0; i < paths.size(); ++i) {
+				Object[] path = paths.get(i);
+				Object[] parent = merges.get(i) ? path : Arrays.copyOf(path, path.length - 1);
+				List<Object> key = Arrays.asList(parent);
+				Target target = targets.get(key);
+				if(target == null) {
+					Object node = template;
+					for(int j = 0; j < parent.length; ++j) {
+						node = step(node, parent[j]);
+						if(node == null)
+							throw new IllegalStateException("Element " + format(parent, j + 1) + " not found in template");
+					}
+					if(!(node instanceof Map))
+						throw new IllegalStateException("Element " + format(parent, parent.length) + " in template is not a map");
+					target = new Target(parent);
+					targets.put(key, target);
+				}
+				if(merges.get(i))
+					target.merges.add(args.get(i));
+				else {
+					target.keys.add((String) path[path.length - 1]);
+					target.args.add(args.get(i));
+					target.values.add(values.get(i));
+				}
+			}
+			return new RequestPatchPlan(targets.values().toArray(new Target[0]), argCount);
+		}
+		
+		private void add(Object[] path, Object value, int arg, boolean merge) {
+			if(path.length == 0 && !merge)
+				throw new IllegalArgumentException("Path must not be empty");
+			for(Object step : path) {
+				if(!(step instanceof String || step instanceof Integer))
+					throw new IllegalArgumentException("Path steps must be strings or integers: " + format(path, path.length));
+			}
+			if(!merge && !(path[path.length - 1] instanceof String))
+				throw new IllegalArgumentException("Path must end with a key: " + format(path, path.length));
+			paths.add(path);
+			values.add(value);
+			args.add(arg);
+			merges.add(merge);
+		}
+	}
+	
+	/**
+	 * The edits to a single map.
+	 */
+	private static class Target {
+		private final Object[] steps;
+		
+		private final List<String> keys = new ArrayList<String>();
+		
+		private final List<Integer> args = new ArrayList<Integer>();
+		
+		private final List<Object> values = new ArrayList<Object>();
+		
+		private final List<Integer> merges = new ArrayList<Integer>();
+		
+		public Target(Object[] steps) {
+			this.steps = steps;
+		}
+	}
+	
+	private final Target[] targets;
+	
+	private final int argCount;
+	
+	private RequestPatchPlan(Target[] targets, int argCount) {
+		this.targets = targets;
+		this.argCount = argCount;
+	}
+	
+	/**
+	 * Convenience method for creating a path.
+	 * @param steps Map keys and list indexes
+	 * @return
+	 */
+	public static Object[] path(Object... steps) {
+		return steps;
+	}
+	
+	/**
+	 * Returns the number of arguments the plan takes.
+	 * @return
+	 */
+	public int getArgCount() {
+		return argCount;
+	}
+	
+	/**
+	 * Applies the plan to the data of a request.
+	 * @param data The data of the request
+	 * @param args The arguments, in the order they were bound.
+	 * @throws IllegalStateException If the request doesn't have the same structure as the template the plan was compiled against.
+	 */
+	public void apply(Map<String, Object> data, Object... args) {
+		if(args.length != argCount)
+			throw new IllegalArgumentException("Expected " + argCount + " arguments, got " + args.length);
+		for(Target target : targets) {
+			Object node = data;
+			for(int i = 0; i < target.steps.length; ++i) {
+				node = step(node, target.steps[i]);
+				if(node == null)
+					throw new IllegalStateException("Element " + format(target.steps, i + 1) + " not found in request");
+			}
+			if(!(node instanceof Map))
+				throw new IllegalStateException("Element " + format(target.steps, target.steps.length) + " in request is not a map");
+			// Request data is parsed from JSON, so map keys are always strings
+			@SuppressWarnings("unchecked")
+			Map<String, Object> map = (Map<String, Object>) node;
+			for(int i = 0; i < target.keys.size(); ++i) {
+				int arg = target.args.get(i);
+				map.put(target.keys.get(i), arg >= 0 ? args[arg] : target.values.get(i));
+			}
+			for(int arg : target.merges) {
+				if(args[arg] != null) {
+					// bindAll() arguments are maps from property names to values
+					@SuppressWarnings("unchecked")
+					Map<String, Object> entries = (Map<String, Object>) args[arg];
+					map.putAll(entries);
+				}
+			}
+		}
+	}
+	
+	private static Object step(Object node, Object step) {
+		if(step instanceof String)
+			return node instanceof Map ? ((Map<?, ?>) node).get(step) : null;
+		int index = (Integer) step;
+		if(!(node instanceof List))
+			return null;
+		List<?> list = (List<?>) node;
+		return index >= 0 && index < list.size() ? list.get(index) : null;
+	}
+	
+	private static String format(Object[] path, int length) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < length; ++i) {
+			if(path[i] instanceof Integer)
+				sb.append('[').append(path[i]).append(']');
+			else {
+				if(sb.length() > 0)
+					sb.append('.');
+				sb.append(path[i]);
+			}
+		}
+		return sb.toString();
+	}
+}
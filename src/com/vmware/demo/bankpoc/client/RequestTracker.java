@@ -0,0 +1,287 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.vmware.vcac.platform.rest.client.RestClient;
+
+/**
+ * Tracks outstanding vRA requests until they complete.
+ * 
+ * All requests are polled from a single background thread. Requests that are due for a poll
+ * are fetched in batches, using a filter that matches many request IDs in one call. The polling
+ * interval for each request grows with its age and with the number of polls where nothing happened,
+ * and requests waiting for approval are polled at the slowest rate. Failed polls back off the same
+ * way, and a request whose polls keep failing completes exceptionally with the error.
+ */
+public class RequestTracker {
+	private static final Set<String> TERMINAL_STATES = new HashSet<String>(Arrays.asList(
+			"SUCCESSFUL", "PARTIALLY_SUCCESSFUL", "FAILED", "REJECTED"));
+	
+	private static final Set<String> APPROVAL_STATES = new HashSet<String>(Arrays.asList(
+			"PENDING_PRE_APPROVAL", "PENDING_POST_APPROVAL"));
+	
+	private static final int DEFAULT_BATCH_SIZE = 50;
+	
+	private static final long DEFAULT_MIN_INTERVAL = 2000;
+	
+	private static final long DEFAULT_MAX_INTERVAL = 60000;
+	
+	private static final long TICK = 500;
+	
+	private static final int MAX_MISSES = 5;
+	
+	private static final int MAX_FAILURES = 10;
+	
+	private static class Tracked {
+		private final String id;
+		
+		private final URI uri;
+		
+		private final CompletableFuture<RequestOutcome> future = new CompletableFuture<RequestOutcome>();
+		
+		private final long started = System.currentTimeMillis();
+		
+		private long nextPoll;
+		
+		private String state;
+		
+		private int unchanged;
+		
+		private int misses;
+		
+		private int failures;
+		
+		public Tracked(String id, URI uri) {
+			this.id = id;
+			this.uri = uri;
+		}
+	}
+	
+	private final RestClient catalogClient;
+	
+	private final int batchSize;
+	
+	private final long minInterval;
+	
+	private final long maxInterval;
+	
+	private final ConcurrentMap<String, Tracked> tracked = new ConcurrentHashMap<String, Tracked>();
+	
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("vra-request-tracker"));
+	
+	private volatile boolean shutdown;
+	
+	public RequestTracker(RestClient catalogClient) {
+		this(catalogClient, DEFAULT_BATCH_SIZE, DEFAULT_MIN_INTERVAL, DEFAULT_MAX_INTERVAL);
+	}
+	
+	/**
+	 * Creates a new request tracker.
+	 * 
+	 * @param catalogClient A client for the catalog service.
+	 * @param batchSize The maximum number of requests to check in a single call.
+	 * @param minInterval The shortest time between two polls of the same request, in milliseconds.
+	 * @param maxInterval The longest time between two polls of the same request, in milliseconds.
+	 */
+	public RequestTracker(RestClient catalogClient, int batchSize, long minInterval, long maxInterval) {
+		this.catalogClient = catalogClient;
+		this.batchSize = batchSize;
+		this.minInterval = minInterval;
+		this.maxInterval = maxInterval;
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				RequestTracker.this.poll();
+			}
+		}, TICK, TICK, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Starts tracking a request.
+	 * 
+	 * @param requestUri The URI of the request, as returned by e.g. requestMachine.
+	 * @return A future that completes when the request reaches a final state. If the tracker
+	 * has been shut down, the future fails with an IllegalStateException.
+	 */
+	public CompletableFuture<RequestOutcome> track(URI requestUri) {
+		String id = getRequestId(requestUri);
+		Tracked t = new Tracked(id, requestUri);
+		t.nextPoll = t.started + minInterval;
+		Tracked existing = tracked.putIfAbsent(id, t);
+		if(existing != null)
+			return existing.future;
+		
+		// Checked after registering, so a concurrent shutdown either sees the request
+		// and cancels it, or we see the shutdown here.
+		//
+		if(shutdown) {
+			tracked.remove(id, t);
+			t.future.completeExceptionally(new IllegalStateException("Request tracker has been shut down"));
+		}
+		return t.future;
+	}
+	
+	/**
+	 * Starts tracking a request and calls a callback when it completes. The callback is called
+	 * from the tracker thread and should return quickly.
+	 * 
+	 * @param requestUri The URI of the request.
+	 * @param callback Called with the outcome of the request.
+	 */
+	public void track(URI requestUri, Consumer<RequestOutcome> callback) {
+		this.track(requestUri).thenAccept(callback);
+	}
+	
+	/**
+	 * Returns the number of requests that haven't completed yet.
+	 * @return
+	 */
+	public int getOutstanding() {
+		return tracked.size();
+	}
+	
+	/**
+	 * Stops tracking. Requests that haven't completed yet are cancelled.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		scheduler.shutdownNow();
+		for(Tracked t : tracked.values())
+			t.future.cancel(false);
+		tracked.clear();
+	}
+	
+	private void poll() {
+		long now = System.currentTimeMillis();
+		List<Tracked> due = new ArrayList<Tracked>();
+		for(Tracked t : tracked.values()) {
+			if(t.nextPoll <= now)
+				due.add(t);
+		}
+		for(int i = 0; i < due.size(); i += batchSize) {
+			List<Tracked> batch = due.subList(i, Math.min(i + batchSize, due.size()));
+			Map<String, String> states;
+			try {
+				states = this.fetchStates(batch);
+			} catch(RuntimeException e) {
+				now = System.currentTimeMillis();
+				for(Tracked t : batch)
+					this.failed(t, e, now);
+				continue;
+			}
+			now = System.currentTimeMillis();
+			for(Tracked t : batch)
+				this.update(t, states.get(t.id), now);
+		}
+	}
+	
+	/**
+	 * Handles a failed poll. The request backs off just like when nothing happened, so an outage
+	 * doesn't get hammered with polls, and gives up with the error after too many failures in a row.
+	 */
+	private void failed(Tracked t, RuntimeException e, long now) {
+		if(++t.failures >= MAX_FAILURES) {
+			tracked.remove(t.id);
+			t.future.completeExceptionally(new IllegalStateException("Unable to poll request " + t.id, e));
+			return;
+		}
+		++t.unchanged;
+		t.nextPoll = now + this.getInterval(t, now);
+	}
+	
+	private void update(Tracked t, String state, long now) {
+		t.failures = 0;
+		if(state == null) {
+			// Not returned. Might not be visible yet, so give it a few chances.
+			//
+			if(++t.misses >= MAX_MISSES) {
+				tracked.remove(t.id);
+				t.future.completeExceptionally(new IllegalStateException("Request " + t.id + " not found"));
+				return;
+			}
+		} else if(TERMINAL_STATES.contains(state)) {
+			tracked.remove(t.id);
+			t.future.complete(new RequestOutcome(t.id, t.uri, state));
+			return;
+		} else if(state.equals(t.state))
+			++t.unchanged;
+		else {
+			t.state = state;
+			t.unchanged = 0;
+		}
+		t.nextPoll = now + this.getInterval(t, now);
+	}
+	
+	/**
+	 * Calculates the time until the next poll. Young requests are polled often, since short
+	 * operations tend to finish quickly. The interval then grows with age and with every
+	 * poll that didn't show any progress.
+	 */
+	private long getInterval(Tracked t, long now) {
+		if(t.state != null && APPROVAL_STATES.contains(t.state))
+			return maxInterval;
+		long interval = Math.max(minInterval, (now - t.started) / 10);
+		for(int i = 0; i < t.unchanged && interval < maxInterval; ++i)
+			interval = interval * 3 / 2;
+		return Math.min(interval, maxInterval);
+	}
+	
+	private Map<String, String> fetchStates(List<Tracked> batch) {
+		StringBuilder filter = new StringBuilder();
+		for(Tracked t : batch) {
+			if(filter.length() > 0)
+				filter.append(" or ");
+			filter.append("id eq '").append(t.id).append("'");
+		}
+		
+		// Pass the filter as a URI variable and let the client encode it. Encoding it here
+		// would get it encoded twice when the path is expanded as a URI template.
+		//
+		Map<?, ?> page = catalogClient.get("consumer/requests?limit={limit}&$filter={filter}", HashMap.class, batch.size(), filter.toString());
+		Map<String, String> result = new HashMap<String, String>();
+		List<?> content = page != null ? (List<?>) page.get("content") : null;
+		if(content != null) {
+			for(Object item : content) {
+				Map<?, ?> rq = (Map<?, ?>) item;
+				result.put((String) rq.get("id"), (String) rq.get("state"));
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Extracts the request ID from a request URI.
+	 * @param requestUri The URI
+	 * @return
+	 */
+	static String getRequestId(URI requestUri) {
+		String path = requestUri.getPath();
+		if(path.endsWith("/"))
+			path = path.substring(0, path.length() - 1);
+		return path.substring(path.lastIndexOf('/') + 1);
+	}
+}
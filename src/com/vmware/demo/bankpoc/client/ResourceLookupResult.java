@@ -0,0 +1,44 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.util.Map;
+import java.util.Set;
+
+import com.vmware.ops.api.model.resource.ResourceDto;
+
+/**
+ * The result of resolving a number of resource names in one go. Holds the resources that
+ * were found, keyed by name, and the names that didn't match any resource.
+ */
+public class ResourceLookupResult {
+	private final Map<String, ResourceDto> resources;
+
+	private final Set<String> missing;
+
+	public ResourceLookupResult(Map<String, ResourceDto> resources, Set<String> missing) {
+		super();
+		this.resources = resources;
+		this.missing = missing;
+	}
+
+	public Map<String, ResourceDto> getResources() {
+		return resources;
+	}
+
+	public Set<String> getMissing() {
+		return missing;
+	}
+
+	public ResourceDto get(String name) {
+		return resources.get(name);
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.vmware.vcac.catalog.rest.stubs.CatalogResourceRequest;
+
+/**
+ * The JSON payload of a resource request (day 2 operation), as expected by the catalog service.
+ * 
+ * The payload serializes itself, so when it's posted through a REST client, the client's JSON message 
+ * converter writes the envelope and the request data straight to the HTTP output stream with the
+ * usual JSON content type. There's no intermediate map and no intermediate copy of the document.
+ * Field names and the request type never change, so they're kept as pre-encoded strings whose UTF-8 
+ * bytes the generator copies straight into its output buffer, which Jackson recycles between requests. 
+ * The request data itself comes from a template fetched for each machine, so it's serialized as is.
+ */
+public class ResourceRequestPayload implements JsonSerializable {
+	private static final SerializedString TYPE = new SerializedString("type");
+	
+	private static final SerializedString TYPE_VALUE = new SerializedString("com.vmware.vcac.catalog.domain.request.CatalogResourceRequest");
+	
+	private static final SerializedString RESOURCE_ID = new SerializedString("resourceId");
+	
+	private static final SerializedString ACTION_ID = new SerializedString("actionId");
+	
+	private static final SerializedString DESCRIPTION = new SerializedString("description");
+	
+	private static final SerializedString DATA = new SerializedString("data");
+	
+	private final CatalogResourceRequest request;
+	
+	public ResourceRequestPayload(CatalogResourceRequest request) {
+		this.request = request;
+	}
+	
+	@Override
+	public void serialize(JsonGenerator gen, SerializerProvider provider) throws IOException {
+		gen.writeStartObject();
+		gen.writeFieldName(TYPE);
+		gen.writeString(TYPE_VALUE);
+		gen.writeFieldName(RESOURCE_ID);
+		gen.writeString(request.getResourceId());
+		gen.writeFieldName(ACTION_ID);
+		gen.writeString(request.getActionId());
+		gen.writeFieldName(DESCRIPTION);
+		gen.writeString(request.getDescription());
+		gen.writeFieldName(DATA);
+		if(request.getData() != null)
+			provider.defaultSerializeValue(request.getData(), gen);
+		else
+			gen.writeNull();
+		gen.writeEndObject();
+	}
+	
+	@Override
+	public void serializeWithType(JsonGenerator gen, SerializerProvider provider, TypeSerializer typeSer) throws IOException {
+		// The payload carries its own type field.
+		//
+		this.serialize(gen, provider);
+	}
+}
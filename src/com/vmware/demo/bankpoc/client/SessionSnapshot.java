@@ -0,0 +1,152 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Reads and writes encrypted session snapshots, used by {@link VRASession} to keep its token across restarts.
+ *
+ * A snapshot is a JSON document encrypted with AES-GCM using a key derived from a passphrase. The file
+ * starts with a small header holding a magic number, a format version, the salt for the key derivation
+ * and the IV. Snapshots are read through a memory mapped buffer and written to a temporary file, readable
+ * by the owner only, that then replaces the old snapshot, so a reader never sees a half written file.
+ */
+class SessionSnapshot {
+	private static final int MAGIC = 0x56524153; // "VRAS"
+	
+	private static final int VERSION = 1;
+	
+	private static final int SALT_LENGTH = 16;
+	
+	private static final int IV_LENGTH = 12;
+	
+	private static final int HEADER_LENGTH = 4 + 4 + SALT_LENGTH + IV_LENGTH;
+	
+	private static final int KEY_ITERATIONS = 65536;
+	
+	private static final ObjectMapper mapper = new ObjectMapper();
+	
+	private static final SecureRandom random = new SecureRandom();
+	
+	/**
+	 * Writes a snapshot.
+	 *
+	 * @param file The file to write to
+	 * @param passphrase The passphrase to encrypt the snapshot with
+	 * @param content The content of the snapshot. Must be serializable to JSON.
+	 * @throws IOException
+	 */
+	public static void write(File file, char[] passphrase, Map<String, Object> content) throws IOException {
+		byte[] salt = new byte[SALT_LENGTH];
+		byte[] iv = new byte[IV_LENGTH];
+		random.nextBytes(salt);
+		random.nextBytes(iv);
+		byte[] encrypted;
+		try {
+			Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+			cipher.init(Cipher.ENCRYPT_MODE, deriveKey(passphrase, salt), new GCMParameterSpec(128, iv));
+			encrypted = cipher.doFinal(mapper.writeValueAsBytes(content));
+		} catch(GeneralSecurityException e) {
+			throw new IOException("Unable to encrypt snapshot", e);
+		}
+		ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+		header.putInt(MAGIC).putInt(VERSION).put(salt).put(iv).flip();
+	
+		File tmp = new File(file.getPath() + ".tmp");
+		boolean written = false;
+		try {
+			RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+			try {
+				try {
+					Files.setPosixFilePermissions(tmp.toPath(), PosixFilePermissions.fromString("rw-------"));
+				} catch(UnsupportedOperationException e) {
+					// Not a POSIX file system. Rely on the encryption alone.
+				}
+				raf.setLength(0);
+				FileChannel channel = raf.getChannel();
+				channel.write(new ByteBuffer[] { header, ByteBuffer.wrap(encrypted) });
+				channel.force(true);
+			} finally {
+				raf.close();
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			written = true;
+		} finally {
+			if(!written)
+				tmp.delete();
+		}
+	}
+	
+	/**
+	 * Reads a snapshot.
+	 *
+	 * @param file The file to read from
+	 * @param passphrase The passphrase the snapshot was encrypted with
+	 * @return The content of the snapshot, or null if the file doesn't exist, is of an unknown format or can't be decrypted.
+	 * @throws IOException
+	 */
+	public static Map<?, ?> read(File file, char[] passphrase) throws IOException {
+		if(!file.exists())
+			return null;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if(channel.size() < HEADER_LENGTH || channel.size() > Integer.MAX_VALUE)
+				return null;
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+				return null;
+			byte[] salt = new byte[SALT_LENGTH];
+			byte[] iv = new byte[IV_LENGTH];
+			buffer.get(salt);
+			buffer.get(iv);
+			Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+			cipher.init(Cipher.DECRYPT_MODE, deriveKey(passphrase, salt), new GCMParameterSpec(128, iv));
+			ByteBuffer plain = ByteBuffer.allocate(cipher.getOutputSize(buffer.remaining()));
+			cipher.doFinal(buffer, plain);
+			return mapper.readValue(Arrays.copyOf(plain.array(), plain.position()), Map.class);
+		} catch(GeneralSecurityException e) {
+			// Wrong passphrase or tampered file. Treat it as if there was no snapshot.
+			//
+			return null;
+		} finally {
+			raf.close();
+		}
+	}
+	
+	private static SecretKey deriveKey(char[] passphrase, byte[] salt) throws GeneralSecurityException {
+		SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+		byte[] key = factory.generateSecret(new PBEKeySpec(passphrase, salt, KEY_ITERATIONS, 256)).getEncoded();
+		return new SecretKeySpec(key, "AES");
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.vmware.vcac.catalog.rest.stubs.CatalogItemProvisioningRequest;
+
+/**
+ * Caches provisioning request templates per catalog item and business group.
+ *
+ * The template fetched from vRA is frozen and kept as a master copy. Every caller gets a new
+ * request whose data is a {@link CopyOnWriteMap} over the master, so it can be modified freely
+ * without affecting other requests and without copying the whole template. Templates are checked
+ * against the version of the catalog item every now and then and reloaded if the item has changed.
+ * The versions are cached too, so concurrent callers share a single lookup per catalog item and
+ * validation interval.
+ */
+public class TemplateCache {
+	private static class Template {
+		private final CatalogItemProvisioningRequest master;
+
+		private final Map<String, Object> data;
+
+		private final Object version;
+
+		public Template(CatalogItemProvisioningRequest master, Map<String, Object> data, Object version) {
+			this.master = master;
+			this.data = data;
+			this.version = version;
+		}
+	}
+
+	private static final long DEFAULT_TTL = 60 * 60 * 1000;
+
+	private static final long DEFAULT_VALIDATION_INTERVAL = 60 * 1000;
+
+	private static final int DEFAULT_SIZE = 100;
+
+	private final VRASession session;
+
+	private final ExpiringCache<String, Template> templates;
+
+	private final ExpiringCache<String, Object> versions;
+
+	public TemplateCache(VRASession session) {
+		this(session, DEFAULT_TTL, DEFAULT_VALIDATION_INTERVAL, DEFAULT_SIZE);
+	}
+
+	/**
+	 * Creates a new template cache.
+	 *
+	 * @param session The session used for fetching templates and catalog item versions.
+	 * @param ttl Maximum time to keep a template, in milliseconds
+	 * @param validationInterval How often to check a template against the catalog item version, in milliseconds.
+	 * @param maxSize Maximum number of templates to keep.
+	 */
+	public TemplateCache(VRASession session, long ttl, long validationInterval, int maxSize) {
+		this.session = session;
+		templates = new ExpiringCache<String, Template>(ttl, maxSize);
+		versions = new ExpiringCache<String, Object>(validationInterval, maxSize);
+	}
+
+	/**
+	 * Returns a new provisioning request based on a cached template. The request may be modified freely.
+	 *
+	 * @param catalogItemId The ID of the catalog item
+	 * @param businessGroupId The business group, or null to use the default business group of the blueprint.
+	 * @return A new provisioning request
+	 */
+	public CatalogItemProvisioningRequest getRequest(final String catalogItemId, final String businessGroupId) {
+		String key = this.getKey(catalogItemId, businessGroupId);
+		Callable<Template> loader = new Callable<Template>() {
+			@Override
+			public Template call() {
+				return TemplateCache.this.load(catalogItemId, businessGroupId);
+			}
+		};
+		Template template = templates.get(key, loader);
+		Object version = versions.get(catalogItemId, new Callable<Object>() {
+			@Override
+			public Object call() {
+				return TemplateCache.this.getVersion(catalogItemId);
+			}
+		});
+		if(version == null ? template.version != null : !version.equals(template.version)) {
+			this.invalidate(catalogItemId);
+			template = templates.get(key, loader);
+		}
+		CatalogItemProvisioningRequest master = template.master;
+		CatalogItemProvisioningRequest request = new CatalogItemProvisioningRequest();
+		request.setCatalogItemId(master.getCatalogItemId());
+		request.setBusinessGroupId(master.getBusinessGroupId());
+		request.setRequestedFor(master.getRequestedFor());
+		request.setDescription(master.getDescription());
+		request.setReasons(master.getReasons());
+		request.setData(new CopyOnWriteMap(template.data));
+		return request;
+	}
+
+	/**
+	 * Removes all templates for a catalog item.
+	 * @param catalogItemId The ID of the catalog item.
+	 */
+	public void invalidate(String catalogItemId) {
+		String prefix = catalogItemId + "/";
+		for(String key : templates.keys()) {
+			if(key.startsWith(prefix))
+				templates.invalidate(key);
+		}
+	}
+
+	/**
+	 * Removes all templates.
+	 */
+	public void invalidateAll() {
+		templates.invalidateAll();
+		versions.invalidateAll();
+	}
+
+	/**
+	 * Returns statistics for the template cache.
+	 * @return
+	 */
+	public CacheStats getStats() {
+		return templates.getStats();
+	}
+
+	private Template load(String catalogItemId, String businessGroupId) {
+		// Read the version first. If the item changes while we're loading, we'll just
+		// reload it next time it's validated. The version is as fresh as it gets, so
+		// let other callers validate against it too.
+		//
+		Object version = this.getVersion(catalogItemId);
+		versions.put(catalogItemId, version);
+		CatalogItemProvisioningRequest master = session.getEntitledCatalogItemService().getTemplateCatalogItemProvisioningRequest(catalogItemId);
+		if(businessGroupId != null)
+			master.setBusinessGroupId(businessGroupId);
+
+		// Request data is parsed from JSON, so map keys are always strings
+		@SuppressWarnings("unchecked")
+		Map<String, Object> data = (Map<String, Object>) CopyOnWriteMap.freeze(master.getData());
+		return new Template(master, data, version);
+	}
+
+	private Object getVersion(String catalogItemId) {
+		Map<?, ?> item = session.getCatalogClient().get("consumer/catalogItems/" + catalogItemId, HashMap.class);
+		return item != null ? item.get("version") : null;
+	}
+
+	private String getKey(String catalogItemId, String businessGroupId) {
+		return catalogItemId + "/" + (businessGroupId != null ? businessGroupId : "");
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Limits the number of concurrent submissions to a tenant. Throttles are shared by all
+ * clients in the JVM, so several clients working against the same tenant share the same limit.
+ */
+public class TenantThrottle {
+	private static final int DEFAULT_LIMIT = 10;
+	
+	private static final ConcurrentMap<String, TenantThrottle> throttles = new ConcurrentHashMap<String, TenantThrottle>();
+	
+	private int limit = DEFAULT_LIMIT;
+	
+	private int inFlight;
+	
+	/**
+	 * Returns the throttle for a tenant.
+	 * @param tenant The tenant name. Null means the default tenant.
+	 * @return
+	 */
+	public static TenantThrottle forTenant(String tenant) {
+		String key = tenant != null ? tenant : "";
+		TenantThrottle throttle = throttles.get(key);
+		if(throttle == null) {
+			TenantThrottle existing = throttles.putIfAbsent(key, throttle = new TenantThrottle());
+			if(existing != null)
+				throttle = existing;
+		}
+		return throttle;
+	}
+	
+	/**
+	 * Sets the maximum number of concurrent submissions.
+	 * @param limit The new limit
+	 */
+	public synchronized void setLimit(int limit) {
+		if(limit < 1)
+			throw new IllegalArgumentException("Limit must be at least 1");
+		this.limit = limit;
+		this.notifyAll();
+	}
+	
+	public synchronized int getLimit() {
+		return limit;
+	}
+	
+	/**
+	 * Waits until a submission is allowed.
+	 * @throws InterruptedException
+	 */
+	public synchronized void acquire() throws InterruptedException {
+		while(inFlight >= limit)
+			this.wait();
+		++inFlight;
+	}
+	
+	/**
+	 * Signals that a submission has finished.
+	 */
+	public synchronized void release() {
+		--inFlight;
+		this.notifyAll();
+	}
+}
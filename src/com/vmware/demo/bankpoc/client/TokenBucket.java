@@ -0,0 +1,67 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+/**
+ * A simple token bucket rate limiter. Tokens are added at a fixed rate up to a maximum
+ * burst size, and every call to {@link #acquire()} takes one token, waiting if none is available. Callers that
+ * can't afford to wait use {@link #tryAcquire()}, which tells them how long to come back after.
+ */
+public class TokenBucket {
+	private final double tokensPerNano;
+	
+	private final double capacity;
+	
+	private double tokens;
+	
+	private long lastRefill = System.nanoTime();
+	
+	/**
+	 * Creates a new token bucket. The bucket starts out full.
+	 * @param ratePerSecond Number of tokens added per second.
+	 * @param burst Maximum number of tokens in the bucket.
+	 */
+	public TokenBucket(double ratePerSecond, int burst) {
+		if(ratePerSecond <= 0 || burst < 1)
+			throw new IllegalArgumentException("Rate and burst must be positive");
+		this.tokensPerNano = ratePerSecond / 1000000000.0;
+		this.capacity = burst;
+		this.tokens = burst;
+	}
+	
+	/**
+	 * Takes a token, waiting until one is available.
+	 * @throws InterruptedException
+	 */
+	public synchronized void acquire() throws InterruptedException {
+		for(;;) {
+			long waitNanos = this.tryAcquire();
+			if(waitNanos == 0)
+				return;
+			this.wait(Math.max(1, waitNanos / 1000000), 0);
+		}
+	}
+	
+	/**
+	 * Takes a token if one is available, without waiting.
+	 * @return 0 if a token was taken, otherwise the number of nanoseconds until one becomes available.
+	 */
+	public synchronized long tryAcquire() {
+		long now = System.nanoTime();
+		tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+		lastRefill = now;
+		if(tokens >= 1.0) {
+			tokens -= 1.0;
+			return 0;
+		}
+		return Math.max(1, (long) Math.ceil((1.0 - tokens) / tokensPerNano));
+	}
+}
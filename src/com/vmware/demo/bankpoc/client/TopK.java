@@ -0,0 +1,113 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the k largest values seen, along with their names, using a fixed size min-heap.
+ * Offering a value is O(log k) and memory use doesn't depend on the number of values offered.
+ * Not thread safe.
+ */
+public class TopK {
+	private final String[] names;
+	
+	private final double[] values;
+	
+	private int size;
+	
+	/**
+	 * Creates a new instance.
+	 * @param k The number of values to keep
+	 */
+	public TopK(int k) {
+		if(k < 1)
+			throw new IllegalArgumentException("k must be at least 1");
+		names = new String[k];
+		values = new double[k];
+	}
+	
+	/**
+	 * Offers a value. It's kept if it's among the k largest seen so far.
+	 * @param name The name associated with the value
+	 * @param value The value
+	 */
+	public void offer(String name, double value) {
+		if(size < values.length) {
+			// Sift up
+			//
+			int i = size++;
+			while(i > 0) {
+				int parent = (i - 1) >>> 1;
+				if(values[parent] <= value)
+					break;
+				names[i] = names[parent];
+				values[i] = values[parent];
+				i = parent;
+			}
+			names[i] = name;
+			values[i] = value;
+		} else if(value > values[0]) {
+			// Replace the smallest and sift down
+			//
+			int i = 0;
+			for(;;) {
+				int child = 2 * i + 1;
+				if(child >= size)
+					break;
+				if(child + 1 < size && values[child + 1] < values[child])
+					++child;
+				if(values[child] >= value)
+					break;
+				names[i] = names[child];
+				values[i] = values[child];
+				i = child;
+			}
+			names[i] = name;
+			values[i] = value;
+		}
+	}
+	
+	/**
+	 * Adds the values kept by another instance to this one.
+	 * @param other The instance to merge
+	 */
+	public void merge(TopK other) {
+		for(int i = 0; i < other.size; ++i)
+			this.offer(other.names[i], other.values[i]);
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns the values kept, largest first.
+	 * @return
+	 */
+	public List<Map.Entry<String, Double>> getTop() {
+		List<Map.Entry<String, Double>> result = new ArrayList<Map.Entry<String, Double>>(size);
+		for(int i = 0; i < size; ++i)
+			result.add(new AbstractMap.SimpleImmutableEntry<String, Double>(names[i], values[i]));
+		Collections.sort(result, new Comparator<Map.Entry<String, Double>>() {
+			@Override
+			public int compare(Map.Entry<String, Double> a, Map.Entry<String, Double> b) {
+				return Double.compare(b.getValue(), a.getValue());
+			}
+		});
+		return result;
+	}
+}
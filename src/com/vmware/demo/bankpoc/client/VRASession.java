@@ -0,0 +1,526 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import com.vmware.cafe.consumer.ConsumerService;
+import com.vmware.vcac.authentication.rest.client.service.SubtenantService;
+import com.vmware.vcac.catalog.rest.client.service.impl.ConsumerCatalogItemService;
+import com.vmware.vcac.catalog.rest.client.service.impl.ConsumerEntitledCatalogItemService;
+import com.vmware.vcac.catalog.rest.client.service.impl.ConsumerRequestService;
+import com.vmware.vcac.catalog.rest.client.service.impl.ConsumerResourceService;
+import com.vmware.vcac.core.reservation.rest.client.service.ReservationPolicyService;
+import com.vmware.vcac.platform.rest.client.RestClient;
+import com.vmware.vcac.platform.security.SslCertificateTrust;
+
+/**
+ * A session with vRA, holding the REST clients and service instances used by {@link POCClient}. 
+ * A session is thread safe and meant to be shared by any number of clients working against the same 
+ * vRA instance and tenant as the same user. Use {@link VRASessionFactory} to obtain one.
+ * 
+ * Nothing happens over the network until it's needed. The session logs in when the first REST client
+ * is requested and each REST client is created the first time it's used, so a caller that only needs
+ * the catalog service never sets up the identity or reservation clients.
+ * 
+ * A session can keep its token in an encrypted snapshot file, see {@link #setSnapshot(File, char[])}. A new process
+ * using the same snapshot picks up the token, its expiry and the service endpoints from the file and doesn't log in
+ * at all until the token is about to expire. With a snapshot, the session gets its token from the identity service
+ * and adds it to the requests of its REST clients itself, since the SDK keeps the token it gets to itself.
+ */
+public class VRASession {
+	private static final String CATALOG_SERVICE = "catalog-service";
+	private static final String RESERVATION_SERVICE = "reservation-service";
+	private static final String IDENTITY_SERVICE = "identity";
+	private static final String[] SERVICES = { CATALOG_SERVICE, RESERVATION_SERVICE, IDENTITY_SERVICE };
+	
+	private static final String DEFAULT_TENANT = "vsphere.local";
+	
+	/**
+	 * A token from a snapshot is only used if it's valid for at least this long.
+	 */
+	private static final long MIN_RESTORED_LIFETIME = 5 * 60 * 1000;
+	
+	private final String url;
+	
+	private final String user;
+	
+	private final String password;
+	
+	private final String tenant;
+	
+	private ConsumerService service;
+	
+	private volatile RestClient catalogClient;
+	
+	private volatile RestClient identityClient;
+	
+	private volatile RestClient reservationClient;
+	
+	private volatile ConsumerCatalogItemService catalogItemService;
+	
+	private volatile ConsumerEntitledCatalogItemService entitledCatalogItemService;
+	
+	private volatile ConsumerRequestService requestService;
+	
+	private volatile ConsumerResourceService resourceService;
+	
+	private volatile SubtenantService subtenantService;
+	
+	private volatile ReservationPolicyService reservationPolicyService;
+	
+	private volatile long authenticatedAt;
+	
+	private volatile long lastUsed = System.currentTimeMillis();
+	
+	private volatile RuntimeException lastRefreshError;
+	
+	private volatile File snapshotFile;
+	
+	private volatile char[] snapshotPassphrase;
+	
+	private volatile IOException lastSnapshotError;
+	
+	/**
+	 * The token, when the session has a snapshot and gets its own token. Null otherwise.
+	 */
+	private volatile String token;
+	
+	private volatile long expiresAt;
+	
+	private final Map<String, String> endpoints = new ConcurrentHashMap<String, String>();
+	
+	/**
+	 * Adds the token to every request made by the REST clients of a session with a snapshot. The token is read
+	 * per request, so the clients pick up a new token as soon as the session has logged in again. A request
+	 * rejected because the token was revoked, or because it was closed, logs in again and is retried once.
+	 */
+	private final ClientHttpRequestInterceptor tokenInterceptor = new ClientHttpRequestInterceptor() {
+		@Override
+		public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+			String current = token;
+			if(current == null)
+				current = VRASession.this.renewToken(null);
+			request.getHeaders().set(HttpHeaders.AUTHORIZATION, "Bearer " + current);
+			ClientHttpResponse response = execution.execute(request, body);
+			if(response.getStatusCode() != HttpStatus.UNAUTHORIZED)
+				return response;
+			response.close();
+			request.getHeaders().set(HttpHeaders.AUTHORIZATION, "Bearer " + VRASession.this.renewToken(current));
+			return execution.execute(request, body);
+		}
+	};
+	
+	/**
+	 * The key of the session in {@link VRASessionFactory}, or null if the factory didn't create it.
+	 */
+	volatile String factoryKey;
+	
+	/**
+	 * The next background login, scheduled by {@link VRASessionFactory}.
+	 */
+	ScheduledFuture<?> refreshTask;
+	
+	final Object refreshLock = new Object();
+	
+	/**
+	 * Creates a new session. The login is deferred until the session is first used.
+	 * 
+	 * @param url The vRA URL
+	 * @param user Username
+	 * @param password Password
+	 * @param tenant The tenant to log in to. Uses the default tenant if null.
+	 */
+	public VRASession(String url, String user, String password, String tenant) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.tenant = tenant;
+	}
+	
+	/**
+	 * Keeps the token of this session in an encrypted snapshot file. The snapshot is written every time the session 
+	 * logs in. When the session is first used, it takes the token from the snapshot instead of logging in if the
+	 * snapshot was written for the same URL, tenant and user and the token is valid for a few more minutes.
+	 * Closes the session if it has logged in already.
+	 * 
+	 * @param file The snapshot file
+	 * @param passphrase The passphrase the snapshot is encrypted with
+	 */
+	public synchronized void setSnapshot(File file, char[] passphrase) {
+		this.close();
+		snapshotFile = file;
+		snapshotPassphrase = passphrase.clone();
+	}
+	
+	/**
+	 * Logs in again, replacing the current token. The REST clients pick up the new token.
+	 */
+	public synchronized void authenticate() {
+		if(snapshotFile != null)
+			this.requestToken();
+		else {
+			if(service == null)
+				service = new ConsumerService(url, SslCertificateTrust.ALWAYS_TRUST);
+			if(tenant == null) 
+				service.authenticate(user, password);
+			else
+				service.authenticate(tenant, user, password);
+		}
+		authenticatedAt = System.currentTimeMillis();
+		lastRefreshError = null;
+		if(snapshotFile != null)
+			this.saveSnapshot();
+		if(factoryKey != null)
+			VRASessionFactory.loggedIn(this);
+	}
+	
+	/**
+	 * Drops the login and all REST clients and service objects. The session can still be used
+	 * after it's been closed, but logs in again when it is.
+	 */
+	public synchronized void close() {
+		service = null;
+		catalogClient = null;
+		identityClient = null;
+		reservationClient = null;
+		catalogItemService = null;
+		entitledCatalogItemService = null;
+		requestService = null;
+		resourceService = null;
+		subtenantService = null;
+		reservationPolicyService = null;
+		token = null;
+		expiresAt = 0;
+		authenticatedAt = 0;
+	}
+	
+	/**
+	 * Records that the session was used.
+	 */
+	void touch() {
+		lastUsed = System.currentTimeMillis();
+	}
+	
+	/**
+	 * Records a failed background login.
+	 * @param e The error
+	 */
+	void refreshFailed(RuntimeException e) {
+		lastRefreshError = e;
+	}
+	
+	/**
+	 * Returns the time the session was last used.
+	 * @return
+	 */
+	public long getLastUsed() {
+		return lastUsed;
+	}
+	
+	/**
+	 * Returns the error from the last background login if it failed, or null if it succeeded or hasn't happened yet.
+	 * The session keeps using its old token until a background login succeeds.
+	 * @return
+	 */
+	public RuntimeException getLastRefreshError() {
+		return lastRefreshError;
+	}
+	
+	/**
+	 * Returns the error from the last attempt to read or write the snapshot, or null if it succeeded. The session
+	 * works without the snapshot, but the next process has to log in.
+	 * @return
+	 */
+	public IOException getLastSnapshotError() {
+		return lastSnapshotError;
+	}
+	
+	/**
+	 * Returns true if this session has logged in.
+	 * @return
+	 */
+	public boolean isAuthenticated() {
+		return authenticatedAt != 0;
+	}
+	
+	/**
+	 * Returns the time of the last successful login, or 0 if the session hasn't logged in yet.
+	 * @return
+	 */
+	public long getAuthenticatedAt() {
+		return authenticatedAt;
+	}
+	
+	/**
+	 * Returns the time the token expires, or 0 if it isn't known. It's only known for sessions with a snapshot,
+	 * since the SDK doesn't tell.
+	 * @return
+	 */
+	public long getExpiresAt() {
+		return expiresAt;
+	}
+	
+	public String getUrl() {
+		return url;
+	}
+
+	public String getUser() {
+		return user;
+	}
+
+	public String getTenant() {
+		return tenant;
+	}
+
+	public RestClient getCatalogClient() {
+		this.touch();
+		RestClient client = catalogClient;
+		if(client == null) {
+			synchronized(this) {
+				if(catalogClient == null)
+					catalogClient = this.createRestClient(CATALOG_SERVICE);
+				client = catalogClient;
+			}
+		}
+		return client;
+	}
+
+	public RestClient getIdentityClient() {
+		this.touch();
+		RestClient client = identityClient;
+		if(client == null) {
+			synchronized(this) {
+				if(identityClient == null)
+					identityClient = this.createRestClient(IDENTITY_SERVICE);
+				client = identityClient;
+			}
+		}
+		return client;
+	}
+
+	public RestClient getReservationClient() {
+		this.touch();
+		RestClient client = reservationClient;
+		if(client == null) {
+			synchronized(this) {
+				if(reservationClient == null)
+					reservationClient = this.createRestClient(RESERVATION_SERVICE);
+				client = reservationClient;
+			}
+		}
+		return client;
+	}
+
+	public ConsumerCatalogItemService getCatalogItemService() {
+		this.touch();
+		ConsumerCatalogItemService result = catalogItemService;
+		if(result == null) {
+			synchronized(this) {
+				if(catalogItemService == null)
+					catalogItemService = new ConsumerCatalogItemService(this.getCatalogClient());
+				result = catalogItemService;
+			}
+		}
+		return result;
+	}
+
+	public ConsumerEntitledCatalogItemService getEntitledCatalogItemService() {
+		this.touch();
+		ConsumerEntitledCatalogItemService result = entitledCatalogItemService;
+		if(result == null) {
+			synchronized(this) {
+				if(entitledCatalogItemService == null)
+					entitledCatalogItemService = new ConsumerEntitledCatalogItemService(this.getCatalogClient());
+				result = entitledCatalogItemService;
+			}
+		}
+		return result;
+	}
+
+	public ConsumerRequestService getRequestService() {
+		this.touch();
+		ConsumerRequestService result = requestService;
+		if(result == null) {
+			synchronized(this) {
+				if(requestService == null)
+					requestService = new ConsumerRequestService(this.getCatalogClient());
+				result = requestService;
+			}
+		}
+		return result;
+	}
+
+	public ConsumerResourceService getResourceService() {
+		this.touch();
+		ConsumerResourceService result = resourceService;
+		if(result == null) {
+			synchronized(this) {
+				if(resourceService == null)
+					resourceService = new ConsumerResourceService(this.getCatalogClient());
+				result = resourceService;
+			}
+		}
+		return result;
+	}
+
+	public SubtenantService getSubtenantService() {
+		this.touch();
+		SubtenantService result = subtenantService;
+		if(result == null) {
+			synchronized(this) {
+				if(subtenantService == null)
+					subtenantService = new SubtenantService(this.getIdentityClient());
+				result = subtenantService;
+			}
+		}
+		return result;
+	}
+
+	public ReservationPolicyService getReservationPolicyService() {
+		this.touch();
+		ReservationPolicyService result = reservationPolicyService;
+		if(result == null) {
+			synchronized(this) {
+				if(reservationPolicyService == null)
+					reservationPolicyService = new ReservationPolicyService(this.getReservationClient());
+				result = reservationPolicyService;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Creates a REST client for a service, logging in first if needed. Must be called with the session locked.
+	 */
+	private RestClient createRestClient(String serviceName) {
+		if(!this.isAuthenticated() && (snapshotFile == null || !this.restoreSnapshot()))
+			this.authenticate();
+		RestClient client;
+		if(snapshotFile != null) {
+			client = new RestClient(this.getEndpoint(serviceName), SslCertificateTrust.ALWAYS_TRUST);
+			client.getRestTemplate().getInterceptors().add(tokenInterceptor);
+		} else
+			client = service.getDefaultRestClientForService(serviceName);
+		client.setMediaType(MediaType.APPLICATION_JSON);
+		return client;
+	}
+	
+	/**
+	 * Returns the endpoint of a service. vRA 7 serves all its services under the appliance URL, so endpoints
+	 * that aren't in the snapshot are resolved from it.
+	 */
+	private String getEndpoint(String serviceName) {
+		String endpoint = endpoints.get(serviceName);
+		if(endpoint == null) {
+			endpoint = (url.endsWith("/") ? url : url + "/") + serviceName + "/api/";
+			endpoints.put(serviceName, endpoint);
+		}
+		return endpoint;
+	}
+	
+	/**
+	 * Gets a new token from the identity service. This is the same login the SDK does, done here so we get to keep the token.
+	 */
+	private void requestToken() {
+		Map<String, String> credentials = new HashMap<String, String>();
+		credentials.put("username", user);
+		credentials.put("password", password);
+		credentials.put("tenant", tenant != null ? tenant : DEFAULT_TENANT);
+		String endpoint = this.getEndpoint(IDENTITY_SERVICE);
+		RestClient client = new RestClient(endpoint, SslCertificateTrust.ALWAYS_TRUST);
+		Map<?, ?> response = client.getRestTemplate().postForObject(endpoint + "tokens", credentials, HashMap.class);
+		if(response == null || !(response.get("id") instanceof String))
+			throw new IllegalStateException("No token returned by " + endpoint + "tokens");
+		Object expires = response.get("expires");
+		token = (String) response.get("id");
+		expiresAt = expires != null 
+				? OffsetDateTime.parse(expires.toString()).toInstant().toEpochMilli() 
+				: System.currentTimeMillis() + VRASessionFactory.getTokenLifetime();
+	}
+	
+	/**
+	 * Logs in again unless another thread has already replaced the token. Returns the current token.
+	 */
+	private synchronized String renewToken(String stale) {
+		if(token == null || token.equals(stale))
+			this.authenticate();
+		return token;
+	}
+	
+	/**
+	 * Takes the token from the snapshot if the snapshot is for this session and the token is still good.
+	 * Returns true if it did.
+	 */
+	private boolean restoreSnapshot() {
+		Map<?, ?> content;
+		try {
+			content = SessionSnapshot.read(snapshotFile, snapshotPassphrase);
+			lastSnapshotError = null;
+		} catch(IOException e) {
+			lastSnapshotError = e;
+			return false;
+		}
+		if(content == null || !url.equals(content.get("url")) || !user.equals(content.get("user")) || !Objects.equals(tenant, content.get("tenant")))
+			return false;
+		Object restoredToken = content.get("token");
+		Object restoredAt = content.get("authenticatedAt");
+		Object restoredExpiry = content.get("expiresAt");
+		Object restoredEndpoints = content.get("endpoints");
+		if(!(restoredToken instanceof String) || !(restoredAt instanceof Number) || !(restoredExpiry instanceof Number) || !(restoredEndpoints instanceof Map))
+			return false;
+		if(((Number) restoredExpiry).longValue() - System.currentTimeMillis() < MIN_RESTORED_LIFETIME)
+			return false;
+		for(Map.Entry<?, ?> entry : ((Map<?, ?>) restoredEndpoints).entrySet())
+			endpoints.put(entry.getKey().toString(), entry.getValue().toString());
+		token = (String) restoredToken;
+		expiresAt = ((Number) restoredExpiry).longValue();
+		authenticatedAt = ((Number) restoredAt).longValue();
+		lastRefreshError = null;
+		if(factoryKey != null)
+			VRASessionFactory.loggedIn(this);
+		return true;
+	}
+	
+	private void saveSnapshot() {
+		for(String serviceName : SERVICES)
+			this.getEndpoint(serviceName);
+		Map<String, Object> content = new HashMap<String, Object>();
+		content.put("url", url);
+		content.put("tenant", tenant);
+		content.put("user", user);
+		content.put("token", token);
+		content.put("authenticatedAt", authenticatedAt);
+		content.put("expiresAt", expiresAt);
+		content.put("endpoints", new HashMap<String, String>(endpoints));
+		try {
+			SessionSnapshot.write(snapshotFile, snapshotPassphrase, content);
+			lastSnapshotError = null;
+		} catch(IOException e) {
+			lastSnapshotError = e;
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Hands out shared {@link VRASession} instances. Every request for a session with the same URL, tenant,
+ * user and password gets the same session, so the login is only done once no matter how many clients are created.
+ * The password is part of the key, so a caller with the wrong password gets a session of its own that fails
+ * to log in rather than someone else's authenticated session. Only a keyed hash of the password is kept in the key.
+ * 
+ * Sessions log in when they are first used and are logged in again in the background before their tokens expire.
+ * A session that took its token from a snapshot is logged in again before the token from the snapshot expires.
+ * Sessions that haven't been used for a while are closed and dropped from the factory, as are sessions passed
+ * to {@link #close(VRASession)}. A closed session can still be used by clients holding on to it. It logs in again
+ * when it is, and from then on it's refreshed in the background and handed out by the factory like before, unless
+ * the factory has created a new session for the same credentials in the meantime.
+ * 
+ * The REST clients of a session, and the HTTP connections they keep, are reused by every client of the session. 
+ * The connections themselves are managed by the vRA SDK.
+ */
+public class VRASessionFactory {
+	private static final long DEFAULT_TOKEN_LIFETIME = 8 * 60 * 60 * 1000;
+	
+	private static final long DEFAULT_MAX_IDLE_TIME = 60 * 60 * 1000;
+	
+	private static final long EVICTION_INTERVAL = 60 * 1000;
+	
+	private static final long RETRY_DELAY = 60 * 1000;
+	
+	private static final ConcurrentMap<String, VRASession> sessions = new ConcurrentHashMap<String, VRASession>();
+	
+	private static final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("vra-token-refresh"));
+	
+	private static final byte[] keySecret = new byte[32];
+	
+	private static volatile long tokenLifetime = DEFAULT_TOKEN_LIFETIME;
+	
+	private static volatile long maxIdleTime = DEFAULT_MAX_IDLE_TIME;
+	
+	static {
+		new SecureRandom().nextBytes(keySecret);
+		refresher.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				evictIdleSessions();
+			}
+		}, EVICTION_INTERVAL, EVICTION_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Returns a session for a URL, user and tenant, creating one if there isn't one already.
+	 * 
+	 * @param url The vRA URL
+	 * @param user Username
+	 * @param password Password
+	 * @param tenant The tenant to log in to. Uses the default tenant if null.
+	 * @return A shared session.
+	 */
+	public static VRASession getSession(String url, String user, String password, String tenant) {
+		String key = getKey(url, user, password, tenant);
+		VRASession session = sessions.get(key);
+		if(session == null) {
+			synchronized(sessions) {
+				session = sessions.get(key);
+				if(session == null) {
+					session = new VRASession(url, user, password, tenant);
+					session.factoryKey = key;
+					sessions.put(key, session);
+				}
+			}
+		}
+		session.touch();
+		return session;
+	}
+	
+	/**
+	 * Closes a session and removes it from the factory. The next request for a session with the same
+	 * credentials gets a new one.
+	 * 
+	 * @param session The session to close
+	 */
+	public static void close(VRASession session) {
+		sessions.values().remove(session);
+		session.close();
+	}
+	
+	/**
+	 * Closes all sessions handed out by the factory.
+	 */
+	public static void closeAll() {
+		for(Map.Entry<String, VRASession> entry : sessions.entrySet()) {
+			if(sessions.remove(entry.getKey(), entry.getValue()))
+				entry.getValue().close();
+		}
+	}
+	
+	/**
+	 * Sets the lifetime of the tokens issued by vRA. Sessions are logged in again when 80% of the lifetime has passed.
+	 * Only used when the session doesn't know when its token expires, see {@link VRASession#getExpiresAt()}, and
+	 * only affects refreshes scheduled after the call.
+	 * 
+	 * @param lifetimeMillis The token lifetime in milliseconds. Defaults to 8 hours, which is what vRA uses out of the box.
+	 */
+	public static void setTokenLifetime(long lifetimeMillis) {
+		tokenLifetime = lifetimeMillis;
+	}
+	
+	static long getTokenLifetime() {
+		return tokenLifetime;
+	}
+	
+	/**
+	 * Sets how long a session can go unused before it's closed and dropped from the factory.
+	 * 
+	 * @param maxIdleMillis The maximum idle time in milliseconds. Defaults to one hour.
+	 */
+	public static void setMaxIdleTime(long maxIdleMillis) {
+		maxIdleTime = maxIdleMillis;
+	}
+	
+	private static void evictIdleSessions() {
+		long now = System.currentTimeMillis();
+		for(Map.Entry<String, VRASession> entry : sessions.entrySet()) {
+			VRASession session = entry.getValue();
+			if(now - session.getLastUsed() > maxIdleTime && sessions.remove(entry.getKey(), session))
+				session.close();
+		}
+	}
+	
+	/**
+	 * Called by a session created by the factory every time it has logged in or taken a token from a snapshot. 
+	 * Schedules the next background login, and puts a session that was closed while clients still held on to it back in the factory.
+	 * 
+	 * @param session The session
+	 */
+	static void loggedIn(VRASession session) {
+		synchronized(sessions) {
+			sessions.putIfAbsent(session.factoryKey, session);
+		}
+		long lifetime = session.getExpiresAt() != 0 ? session.getExpiresAt() - session.getAuthenticatedAt() : tokenLifetime;
+		scheduleRefresh(session, Math.max(0, session.getAuthenticatedAt() + lifetime * 8 / 10 - System.currentTimeMillis()));
+	}
+	
+	/**
+	 * Schedules the next background login of a session, replacing any login already scheduled.
+	 */
+	private static void scheduleRefresh(final VRASession session, long delay) {
+		ScheduledFuture<?> task = refresher.schedule(new Runnable() {
+			@Override
+			public void run() {
+				// A closed session has nothing to refresh. It's scheduled again if it logs in again.
+				//
+				if(!session.isAuthenticated())
+					return;
+				
+				// Idle sessions are closed here as well as by the evictor, since a session that has been
+				// replaced in the factory is only ever seen here.
+				//
+				if(System.currentTimeMillis() - session.getLastUsed() > maxIdleTime) {
+					sessions.remove(session.factoryKey, session);
+					session.close();
+					return;
+				}
+				try {
+					// Schedules the next refresh when it succeeds
+					//
+					session.authenticate();
+				} catch(RuntimeException e) {
+					// Keep the old token for now and try again shortly. The error is kept
+					// on the session so callers can see why the refresh failed.
+					//
+					session.refreshFailed(e);
+					scheduleRefresh(session, RETRY_DELAY);
+				}
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+		synchronized(session.refreshLock) {
+			if(session.refreshTask != null)
+				session.refreshTask.cancel(false);
+			session.refreshTask = task;
+		}
+	}
+	
+	private static String getKey(String url, String user, String password, String tenant) {
+		byte[] digest;
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(keySecret, "HmacSHA256"));
+			digest = mac.doFinal((password != null ? password : "").getBytes(StandardCharsets.UTF_8));
+		} catch(GeneralSecurityException e) {
+			throw new IllegalStateException("HmacSHA256 not available", e);
+		}
+		StringBuilder sb = new StringBuilder(url).append('|').append(tenant != null ? tenant : "").append('|').append(user).append('|');
+		for(byte b : digest)
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		return sb.toString();
+	}
+}
@@ -10,27 +10,127 @@
 
 package com.vmware.demo.bankpoc.client;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import com.vmware.ops.api.client.Client;
 import com.vmware.ops.api.client.Client.ClientConfig;
 import com.vmware.ops.api.client.controllers.ResourcesClient;
 import com.vmware.ops.api.model.common.PageInfo;
 import com.vmware.ops.api.model.resource.ResourceDto;
-import com.vmware.ops.api.model.resource.ResourceDto.ResourceRelationDto;
 import com.vmware.ops.api.model.resource.ResourceQuery;
-import com.vmware.ops.api.model.resource.ResourceDto.ResourceDtoList;
+import com.vmware.ops.api.model.stat.IntervalType;
 import com.vmware.ops.api.model.stat.LatestStatQuery;
+import com.vmware.ops.api.model.stat.RollUpType;
 import com.vmware.ops.api.model.stat.Stat;
+import com.vmware.ops.api.model.stat.Stat.ResourceStats;
 import com.vmware.ops.api.model.stat.Stat.ResourcesStats;
+import com.vmware.ops.api.model.stat.StatQuery;
 
 public class VROPSClient {
+	/**
+	 * Collects the VMs of a group. VMs with the same name are added up in one row, so the totals
+	 * are the sum of every VM in the group.
+	 */
+	private static class GroupAccumulator implements MachineConsumptionTable.Visitor {
+		private final MachineConsumptionTable machines = new MachineConsumptionTable();
+		
+		@Override
+		public void visit(String name, double cpuMHz, double memoryKB, double storageMB) {
+			machines.add(name, cpuMHz, memoryKB, storageMB);
+		}
+		
+		public AggregateResourceConsumption toAggregate() {
+			return new AggregateResourceConsumption(machines.getTotals(), machines);
+		}
+	}
+	
+	/**
+	 * A batch of group members whose stats are being fetched.
+	 */
+	private static class PendingBatch {
+		private final List<ResourceDto> members;
+		
+		private final Future<Map<UUID, ResourceConsumption>> stats;
+		
+		public PendingBatch(List<ResourceDto> members, Future<Map<UUID, ResourceConsumption>> stats) {
+			this.members = members;
+			this.stats = stats;
+		}
+	}
+	
+	private static final String[] CONSUMPTION_STAT_KEYS = new String[] { "cpu|usagemhz_average", "mem|consumed_average", "diskspace|used" };
+	
+	private static final int DEFAULT_STATS_BATCH_SIZE = 100;
+	
+	private static final int HISTORY_BATCH_SIZE = 20;
+	
+	private static final int DEFAULT_NAME_BATCH_SIZE = 100;
+	
+	private static final int NAME_QUERY_PAGE_SIZE = 1000;
+	
+	private static final int DEFAULT_PARALLELISM = 4;
+	
+	private static final int CHILD_PAGE_SIZE = 1000;
+	
+	private static final long RESOURCE_TTL = 60 * 60 * 1000;
+	
+	private static final long RESOURCE_NEGATIVE_TTL = 60 * 1000;
+	
+	private static final long RESOURCE_REFRESH_AFTER = 45 * 60 * 1000;
+	
+	private static final int RESOURCE_CACHE_SIZE = 250000;
+	
+	private static final long RESOURCE_CACHE_MAX_WEIGHT = 128L * 1024 * 1024;
+	
+	/**
+	 * Rough size of a cached resource in bytes, not counting its name. Resource DTOs carry a resource key,
+	 * identifiers and status records, which comes to around a kilobyte once parsed.
+	 */
+	private static final int RESOURCE_OVERHEAD = 1024;
+	
+	/**
+	 * Estimates the memory held by a cached resource lookup in bytes. Names are counted twice, once in
+	 * the key and once in the resource.
+	 */
+	private static final ExpiringCache.Weigher<String, ResourceDto> RESOURCE_WEIGHER = new ExpiringCache.Weigher<String, ResourceDto>() {
+		@Override
+		public int weigh(String key, ResourceDto value) {
+			int keyBytes = 40 + 2 * key.length();
+			return value != null ? RESOURCE_OVERHEAD + 2 * keyBytes : keyBytes;
+		}
+	};
+	
 	private final Client vrops;
 	
-	private final Map<String, ResourceDto> resourceCache = new HashMap<String, ResourceDto>();
+	private final ExpiringCache<String, ResourceDto> resourceCache = new ExpiringCache<String, ResourceDto>(RESOURCE_TTL,
+			RESOURCE_NEGATIVE_TTL, RESOURCE_REFRESH_AFTER, RESOURCE_CACHE_SIZE, RESOURCE_CACHE_MAX_WEIGHT, RESOURCE_WEIGHER);
+	
+	private final ThreadPoolExecutor executor;
+	
+	private final int parallelism;
+	
+	private volatile int statsBatchSize = DEFAULT_STATS_BATCH_SIZE;
+	
+	private volatile int nameBatchSize = DEFAULT_NAME_BATCH_SIZE;
 	
 	/**
 	 * Creates a new connection to vR Ops
@@ -40,6 +140,24 @@ public class VROPSClient {
 	 * @param verifyCertificate True if certificate verification is needed
 	 */
 	public VROPSClient(String url, String username, String password, boolean verifyCertificate) {
+		this(url, username, password, verifyCertificate, DEFAULT_PARALLELISM);
+	}
+	
+	/**
+	 * Creates a new connection to vR Ops
+	 * @param url The URL to the vR Ops API 
+	 * @param username Username
+	 * @param password Password
+	 * @param verifyCertificate True if certificate verification is needed
+	 * @param parallelism Maximum number of concurrent calls to vR Ops for bulk operations.
+	 */
+	public VROPSClient(String url, String username, String password, boolean verifyCertificate, int parallelism) {
+		this.parallelism = parallelism;
+		
+		// Idle threads time out, so a client that's simply dropped doesn't keep its pool around.
+		//
+		executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("vrops"));
+		executor.allowCoreThreadTimeOut(true);
 		vrops = ClientConfig.builder()
                 .basicAuth(username, password)
                 .useJson()
@@ -51,25 +169,95 @@ public class VROPSClient {
 		}
 	
 	/**
-	 * Returns a resource ID based on a resource name
+	 * Returns a resource based on its exact name. Resources that merely contain the name aren't returned.
 	 * @param resourceKindKey The resorce kind
 	 * @param name The resource name
-	 * @return
+	 * @return The resource, or null if there's no resource with that name.
 	 */
-	public ResourceDto findResourceByName(String resourceKindKey, String name) {
-		ResourcesClient rc = vrops.resourcesClient();
-		ResourceQuery q = new ResourceQuery();
-		String cacheKey = "" + resourceKindKey + ":" + name;
-		ResourceDto resource = resourceCache.get(cacheKey);
-		if(resource == null) {
-			if(resourceKindKey != null)
-				q.setResourceKind(new String[] { resourceKindKey });
-			q.setName(new String[] { name });
-			ResourceDtoList result = rc.getResources(q, new PageInfo(0, 1, 1));
-			resource = result.getResourceList().size() > 0 ? result.getResourceList().get(0) : null;
-			resourceCache.put(cacheKey, resource);
+	public ResourceDto findResourceByName(final String resourceKindKey, final String name) {
+		return resourceCache.get(this.getCacheKey(resourceKindKey, name), new Callable<ResourceDto>() {
+			@Override
+			public ResourceDto call() {
+				return VROPSClient.this.loadResourcesByNames(resourceKindKey, Collections.singletonList(name)).get(name);
+			}
+		});
+	}
+	
+	/**
+	 * Resolves a number of resource names. Names that aren't cached are looked up in batches
+	 * (see {@link #setNameBatchSize(int)}) and the batches are run in parallel. The results,
+	 * including the names that weren't found, are added to the cache.
+	 * 
+	 * @param resourceKindKey The resource kind
+	 * @param names The resource names
+	 * @return The resources that were found and the names that weren't.
+	 */
+	public ResourceLookupResult findResourcesByNames(final String resourceKindKey, Collection<String> names) {
+		Set<String> unique = new LinkedHashSet<String>(names);
+		Map<String, String> namesByKey = new HashMap<String, String>(unique.size() * 2);
+		for(String name : unique)
+			namesByKey.put(this.getCacheKey(resourceKindKey, name), name);
+		Map<String, ResourceDto> resources = new HashMap<String, ResourceDto>(unique.size() * 2);
+		Set<String> missing = new LinkedHashSet<String>();
+		List<String> toLoad = new ArrayList<String>();
+		Map<String, ResourceDto> cached = resourceCache.getAllPresent(namesByKey.keySet());
+		for(String name : unique) {
+			String key = this.getCacheKey(resourceKindKey, name);
+			if(!cached.containsKey(key))
+				toLoad.add(name);
+			else if(cached.get(key) != null)
+				resources.put(name, cached.get(key));
+			else
+				missing.add(name);
+		}
+		
+		// Look up whatever wasn't in the cache
+		//
+		List<Future<Map<String, ResourceDto>>> futures = new ArrayList<Future<Map<String, ResourceDto>>>();
+		int batchSize = nameBatchSize;
+		for(int i = 0; i < toLoad.size(); i += batchSize) {
+			final List<String> batch = toLoad.subList(i, Math.min(i + batchSize, toLoad.size()));
+			futures.add(executor.submit(new Callable<Map<String, ResourceDto>>() {
+				@Override
+				public Map<String, ResourceDto> call() {
+					return VROPSClient.this.loadResourcesByNames(resourceKindKey, batch);
+				}
+			}));
+		}
+		for(Future<Map<String, ResourceDto>> future : futures)
+			resources.putAll(this.await(future));
+		for(String name : toLoad) {
+			ResourceDto resource = resources.get(name);
+			resourceCache.put(this.getCacheKey(resourceKindKey, name), resource);
+			if(resource == null)
+				missing.add(name);
 		}
-		return resource;
+		return new ResourceLookupResult(resources, missing);
+	}
+	
+	/**
+	 * Sets the maximum number of names to ask for in a single resource query.
+	 * @param nameBatchSize The batch size
+	 */
+	public void setNameBatchSize(int nameBatchSize) {
+		if(nameBatchSize < 1)
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		this.nameBatchSize = nameBatchSize;
+	}
+	
+	/**
+	 * Returns statistics for the resource lookup cache.
+	 * @return
+	 */
+	public CacheStats getResourceCacheStats() {
+		return resourceCache.getStats();
+	}
+	
+	/**
+	 * Clears the resource lookup cache.
+	 */
+	public void invalidateResourceCache() {
+		resourceCache.invalidateAll();
 	}
 	
 	/**
@@ -82,10 +270,26 @@ public class VROPSClient {
 		LatestStatQuery query = new LatestStatQuery();
 		ResourceDto res = this.findResourceByName("VirtualMachine", vmName);
 		query.setResourceId(new UUID[] { res.getIdentifier() });
-		query.setStatKey(new String[] { "cpu|usagemhz_average", "mem|consumed_average", "diskspace|used" });
+		query.setStatKey(CONSUMPTION_STAT_KEYS);
 		ResourcesStats stats = rc.getLatestStats(query);
-		List<Stat> statList = stats.getValues().get(0).getStats().getStatList();
-		return new ResourceConsumption(statList.get(0).getData()[0], statList.get(2).getData()[0], statList.get(3).getData()[0]);
+		return this.toConsumption(stats.getValues().get(0));
+	}
+	
+	/**
+	 * Returns resource consumption data for a number of VMs based on their names. The names are
+	 * resolved in bulk first and the stats are then fetched in bulk.
+	 * @param vmNames The VM names
+	 * @return Consumption data by VM name. VMs that weren't found or have no data are left out.
+	 */
+	public Map<String, ResourceConsumption> getVMMetricsByNames(Collection<String> vmNames) {
+		ResourceLookupResult lookup = this.findResourcesByNames("VirtualMachine", vmNames);
+		Map<UUID, String> namesById = new HashMap<UUID, String>(lookup.getResources().size() * 2);
+		for(Map.Entry<String, ResourceDto> entry : lookup.getResources().entrySet())
+			namesById.put(entry.getValue().getIdentifier(), entry.getKey());
+		Map<String, ResourceConsumption> result = new HashMap<String, ResourceConsumption>(namesById.size() * 2);
+		for(Map.Entry<UUID, ResourceConsumption> entry : this.getVMMetricsByMachineIDs(namesById.keySet()).entrySet())
+			result.put(namesById.get(entry.getKey()), entry.getValue());
+		return result;
 	}
 	
 	/**
@@ -97,12 +301,112 @@ public class VROPSClient {
 		ResourcesClient rc = vrops.resourcesClient();
 		LatestStatQuery query = new LatestStatQuery();
 		query.setResourceId(new UUID[] { vmId });
-		query.setStatKey(new String[] { "cpu|usagemhz_average", "mem|consumed_average", "diskspace|used" });
+		query.setStatKey(CONSUMPTION_STAT_KEYS);
 		ResourcesStats stats = rc.getLatestStats(query);
 		if(stats.getValues().size() == 0)
 			return null;
-		List<Stat> statList = stats.getValues().get(0).getStats().getStatList();
-		return new ResourceConsumption(statList.get(0).getData()[0], statList.get(2).getData()[0], statList.get(3).getData()[0]);
+		return this.toConsumption(stats.getValues().get(0));
+	}
+	
+	/**
+	 * Returns consumption data for a number of VMs. The VMs are queried in batches (see {@link #setStatsBatchSize(int)})
+	 * and the batches are run in parallel.
+	 * 
+	 * @param vmIds The VM IDs
+	 * @return Consumption data by VM ID. VMs that vR Ops has no data for are left out.
+	 */
+	public Map<UUID, ResourceConsumption> getVMMetricsByMachineIDs(Collection<UUID> vmIds) {
+		List<UUID> ids = new ArrayList<UUID>(vmIds);
+		List<Future<Map<UUID, ResourceConsumption>>> futures = new ArrayList<Future<Map<UUID, ResourceConsumption>>>();
+		int batchSize = statsBatchSize;
+		for(int i = 0; i < ids.size(); i += batchSize)
+			futures.add(this.submitStats(ids.subList(i, Math.min(i + batchSize, ids.size())).toArray(new UUID[0])));
+		Map<UUID, ResourceConsumption> result = new HashMap<UUID, ResourceConsumption>(ids.size() * 2);
+		for(Future<Map<UUID, ResourceConsumption>> future : futures)
+			result.putAll(this.await(future));
+		return result;
+	}
+	
+	/**
+	 * Returns the children of a resource, e.g. the members of a group. The children are fetched
+	 * one page at a time as the iterator is consumed, so this works for groups of any size.
+	 * Close the iterator if you stop before reaching the end.
+	 * @param parentId The ID of the parent resource
+	 * @return
+	 */
+	public PagedIterator<ResourceDto> iterateChildren(final UUID parentId) {
+		return new PagedIterator<ResourceDto>(0, CHILD_PAGE_SIZE) {
+			@Override
+			protected List<ResourceDto> fetchPage(int page, int pageSize) {
+				return vrops.resourcesClient().getChildren(parentId, new PageInfo(page, pageSize, pageSize)).getResourceList();
+			}
+		};
+	}
+	
+	/**
+	 * Returns the consumption history of a VM.
+	 * @param vmId The VM ID
+	 * @param begin Start of the period, in milliseconds since the epoch
+	 * @param end End of the period, in milliseconds since the epoch
+	 * @param rollUpType How vR Ops should roll up samples within each interval, e.g. AVG or MAX.
+	 * @param intervalType The unit of the roll up interval
+	 * @param intervalQuantifier The length of the roll up interval, in units of intervalType
+	 * @return The history, or null if vR Ops has no data for the VM.
+	 */
+	public ConsumptionHistory getVMHistoryByMachineID(UUID vmId, long begin, long end, RollUpType rollUpType, 
+			IntervalType intervalType, int intervalQuantifier) {
+		return this.getVMHistoryByMachineIDs(Collections.singleton(vmId), begin, end, rollUpType, intervalType, intervalQuantifier).get(vmId);
+	}
+	
+	/**
+	 * Returns the consumption history of a number of VMs. The samples are rolled up by vR Ops, so 
+	 * choose an interval that gives a sensible number of samples for the period. The VMs are queried
+	 * in small batches that are run in parallel.
+	 * @param vmIds The VM IDs
+	 * @param begin Start of the period, in milliseconds since the epoch
+	 * @param end End of the period, in milliseconds since the epoch
+	 * @param rollUpType How vR Ops should roll up samples within each interval, e.g. AVG or MAX.
+	 * @param intervalType The unit of the roll up interval
+	 * @param intervalQuantifier The length of the roll up interval, in units of intervalType
+	 * @return The history by VM ID. VMs that vR Ops has no data for are left out.
+	 */
+	public Map<UUID, ConsumptionHistory> getVMHistoryByMachineIDs(Collection<UUID> vmIds, final long begin, final long end, 
+			final RollUpType rollUpType, final IntervalType intervalType, final int intervalQuantifier) {
+		List<UUID> ids = new ArrayList<UUID>(vmIds);
+		List<Future<ResourcesStats>> futures = new ArrayList<Future<ResourcesStats>>();
+		for(int i = 0; i < ids.size(); i += HISTORY_BATCH_SIZE) {
+			final UUID[] batch = ids.subList(i, Math.min(i + HISTORY_BATCH_SIZE, ids.size())).toArray(new UUID[0]);
+			futures.add(executor.submit(new Callable<ResourcesStats>() {
+				@Override
+				public ResourcesStats call() {
+					StatQuery query = new StatQuery();
+					query.setResourceId(batch);
+					query.setStatKey(CONSUMPTION_STAT_KEYS);
+					query.setBegin(begin);
+					query.setEnd(end);
+					query.setRollUpType(rollUpType);
+					query.setIntervalType(intervalType);
+					query.setIntervalQuantifier(intervalQuantifier);
+					return vrops.resourcesClient().getStats(query);
+				}
+			}));
+		}
+		Map<UUID, ConsumptionHistory> result = new HashMap<UUID, ConsumptionHistory>(ids.size() * 2);
+		for(Future<ResourcesStats> future : futures) {
+			for(ResourceStats rs : this.await(future).getValues())
+				result.put(rs.getResourceId(), this.toHistory(rs));
+		}
+		return result;
+	}
+	
+	/**
+	 * Sets the maximum number of resources to ask for in a single stats query.
+	 * @param statsBatchSize The batch size
+	 */
+	public void setStatsBatchSize(int statsBatchSize) {
+		if(statsBatchSize < 1)
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		this.statsBatchSize = statsBatchSize;
 	}
 	
 	/**
@@ -111,23 +415,260 @@ public class VROPSClient {
 	 * @return
 	 */
 	public AggregateResourceConsumption getGroupConsumption(String tagName, String tagValue) {
-		double totCpu = 0.0;
-		double totMem = 0.0;
-		double totStorage = 0.0;
-		Map<String, ResourceConsumption> machines = new HashMap<String, ResourceConsumption>();
+		GroupAccumulator acc = new GroupAccumulator();
+		this.visitGroup(tagName, tagValue, acc);
+		return acc.toAggregate();
+	}
+	
+	/**
+	 * Returns the top consumers and consumption percentiles of a group. They're calculated as the
+	 * consumption data arrives, without keeping the data for every machine.
+	 * @param tagName The tag name
+	 * @param tagValue The tag value, e.g. the AIT
+	 * @param k The number of top consumers to return for each metric
+	 * @return
+	 */
+	public ConsumptionAnalytics getGroupAnalytics(String tagName, String tagValue, int k) {
+		ConsumptionAnalytics analytics = new ConsumptionAnalytics(k);
+		this.visitGroup(tagName, tagValue, analytics);
+		return analytics;
+	}
+	
+	/**
+	 * Fetches the consumption of all members of a group and passes it to a visitor as it arrives.
+	 * Members that vR Ops has no data for are skipped. The visitor is always called from the calling thread.
+	 * @param tagName The tag name
+	 * @param tagValue The tag value, e.g. the AIT
+	 * @param visitor The visitor
+	 */
+	public void visitGroup(String tagName, String tagValue, MachineConsumptionTable.Visitor visitor) {
 		ResourceDto res = this.findResourceByName("Environment", tagName + "-" + tagValue);
+		
+		// Stats are requested as soon as a batch of members has been enumerated. Only a few
+		// batches are allowed to be in flight at any time, so memory use doesn't depend on the 
+		// size of the group.
+		//
+		Deque<PendingBatch> pending = new ArrayDeque<PendingBatch>();
+		PagedIterator<ResourceDto> children = this.iterateChildren(res.getIdentifier());
+		try {
+			int batchSize = statsBatchSize;
+			List<ResourceDto> batch = new ArrayList<ResourceDto>(batchSize);
+			while(children.hasNext()) {
+				batch.add(children.next());
+				if(batch.size() < batchSize)
+					continue;
+				pending.addLast(this.submitBatch(batch));
+				batch = new ArrayList<ResourceDto>(batchSize);
+				while(pending.size() > parallelism)
+					this.drain(pending.removeFirst(), visitor);
+			}
+			if(!batch.isEmpty())
+				pending.addLast(this.submitBatch(batch));
+			while(!pending.isEmpty())
+				this.drain(pending.removeFirst(), visitor);
+		} finally {
+			children.close();
+			for(PendingBatch p : pending)
+				p.stats.cancel(true);
+		}
+	}
+	
+	/**
+	 * Returns aggregate resource consumption for a number of AITs. The groups are resolved in bulk,
+	 * their members are enumerated in parallel and the stats for all members are fetched in one bulk
+	 * operation, so a VM that belongs to more than one group is only fetched once. 
+	 * @param tagName The tag name
+	 * @param tagValues The tag values, e.g. the AITs
+	 * @return Aggregate consumption by tag value. Groups that don't exist are left out.
+	 */
+	public Map<String, AggregateResourceConsumption> getGroupConsumptions(String tagName, Collection<String> tagValues) {
+		return this.getGroupConsumptions(this.getGroupMembers(tagName, tagValues));
+	}
+	
+	/**
+	 * Returns aggregate resource consumption for groups whose members are already known, e.g. from an
+	 * earlier call to {@link #getGroupMembers(String, Collection)}. Only the latest stats are fetched, in 
+	 * one bulk operation for all groups.
+	 * @param members Member names by member ID, by group
+	 * @return Aggregate consumption by group
+	 */
+	public Map<String, AggregateResourceConsumption> getGroupConsumptions(final Map<String, Map<UUID, String>> members) {
+		Set<UUID> ids = new LinkedHashSet<UUID>();
+		for(Map<UUID, String> groupMembers : members.values())
+			ids.addAll(groupMembers.keySet());
+		
+		// Fetch everything once and aggregate the groups on the fork-join pool
+		//
+		final Map<UUID, ResourceConsumption> consumption = this.getVMMetricsByMachineIDs(ids);
+		return members.keySet().parallelStream().collect(Collectors.toMap(Function.<String>identity(),
+				new Function<String, AggregateResourceConsumption>() {
+					@Override
+					public AggregateResourceConsumption apply(String group) {
+						return VROPSClient.this.aggregate(members.get(group), consumption);
+					}
+				}));
+	}
+	
+	/**
+	 * Returns the members of a number of groups. The groups are resolved in bulk and their members
+	 * are enumerated in parallel.
+	 * @param tagName The tag name
+	 * @param tagValues The tag values, e.g. the AITs
+	 * @return Member names by member ID, by tag value. Groups that don't exist are left out.
+	 */
+	public Map<String, Map<UUID, String>> getGroupMembers(String tagName, Collection<String> tagValues) {
+		Map<String, String> tagValuesByName = new HashMap<String, String>(tagValues.size() * 2);
+		for(String tagValue : tagValues)
+			tagValuesByName.put(tagName + "-" + tagValue, tagValue);
+		ResourceLookupResult groups = this.findResourcesByNames("Environment", tagValuesByName.keySet());
+		Map<String, Future<Map<UUID, String>>> futures = new HashMap<String, Future<Map<UUID, String>>>();
+		for(Map.Entry<String, ResourceDto> group : groups.getResources().entrySet()) {
+			final UUID groupId = group.getValue().getIdentifier();
+			futures.put(tagValuesByName.get(group.getKey()), executor.submit(new Callable<Map<UUID, String>>() {
+				@Override
+				public Map<UUID, String> call() {
+					Map<UUID, String> children = new LinkedHashMap<UUID, String>();
+					PagedIterator<ResourceDto> itor = VROPSClient.this.iterateChildren(groupId);
+					while(itor.hasNext()) {
+						ResourceDto child = itor.next();
+						children.put(child.getIdentifier(), child.getResourceKey().getName());
+					}
+					return children;
+				}
+			}));
+		}
+		Map<String, Map<UUID, String>> members = new HashMap<String, Map<UUID, String>>(futures.size() * 2);
+		for(Map.Entry<String, Future<Map<UUID, String>>> entry : futures.entrySet())
+			members.put(entry.getKey(), this.await(entry.getValue()));
+		return members;
+	}
+	
+	/**
+	 * Sums up the consumption of the members of a group.
+	 */
+	private AggregateResourceConsumption aggregate(Map<UUID, String> members, Map<UUID, ResourceConsumption> consumption) {
+		GroupAccumulator acc = new GroupAccumulator();
+		for(Map.Entry<UUID, String> member : members.entrySet()) {
+			ResourceConsumption rc = consumption.get(member.getKey());
+			if(rc != null)
+				acc.visit(member.getValue(), rc.getCpuMHz(), rc.getMemoryKB(), rc.getStorageMB());
+		}
+		return acc.toAggregate();
+	}
+	
+	private PendingBatch submitBatch(List<ResourceDto> members) {
+		UUID[] ids = new UUID[members.size()];
+		for(int i = 0; i < ids.length; ++i)
+			ids[i] = members.get(i).getIdentifier();
+		return new PendingBatch(members, this.submitStats(ids));
+	}
+	
+	private void drain(PendingBatch batch, MachineConsumptionTable.Visitor visitor) {
+		Map<UUID, ResourceConsumption> consumption = this.await(batch.stats);
+		for(ResourceDto child : batch.members)
+			this.visit(child, consumption.get(child.getIdentifier()), visitor);
+	}
+	
+	private void visit(ResourceDto child, ResourceConsumption thisMachine, MachineConsumptionTable.Visitor visitor) {
+		if(thisMachine != null)
+			visitor.visit(child.getResourceKey().getName(), thisMachine.getCpuMHz(), thisMachine.getMemoryKB(), thisMachine.getStorageMB());
+	}
+	
+	/**
+	 * Fetches the latest stats for a batch of VMs on the executor.
+	 */
+	private Future<Map<UUID, ResourceConsumption>> submitStats(final UUID[] batch) {
+		return executor.submit(new Callable<Map<UUID, ResourceConsumption>>() {
+			@Override
+			public Map<UUID, ResourceConsumption> call() {
+				LatestStatQuery query = new LatestStatQuery();
+				query.setResourceId(batch);
+				query.setStatKey(CONSUMPTION_STAT_KEYS);
+				Map<UUID, ResourceConsumption> result = new HashMap<UUID, ResourceConsumption>(batch.length * 2);
+				for(ResourceStats rs : vrops.resourcesClient().getLatestStats(query).getValues())
+					result.put(rs.getResourceId(), VROPSClient.this.toConsumption(rs));
+				return result;
+			}
+		});
+	}
+	
+	/**
+	 * Runs a single query for a batch of names. The name query may match more than one resource
+	 * per name, so results are matched on the exact name and the first exact match wins. Both
+	 * the single and the bulk lookup go through here, so they agree on what a name resolves to.
+	 */
+	private Map<String, ResourceDto> loadResourcesByNames(String resourceKindKey, List<String> names) {
 		ResourcesClient rc = vrops.resourcesClient();
-		PageInfo page = new PageInfo(0, 10000, 10000);
-		ResourceRelationDto children = rc.getChildren(res.getIdentifier(), page);
-		for(ResourceDto child : children.getResourceList()) {
-			ResourceConsumption thisMachine = this.getVMMetricsByMachineID(child.getIdentifier());
-			if(thisMachine == null)
+		ResourceQuery q = new ResourceQuery();
+		if(resourceKindKey != null)
+			q.setResourceKind(new String[] { resourceKindKey });
+		q.setName(names.toArray(new String[0]));
+		Set<String> wanted = new LinkedHashSet<String>(names);
+		Map<String, ResourceDto> result = new HashMap<String, ResourceDto>(names.size() * 2);
+		for(int page = 0;; ++page) {
+			List<ResourceDto> resources = rc.getResources(q, new PageInfo(page, NAME_QUERY_PAGE_SIZE, NAME_QUERY_PAGE_SIZE)).getResourceList();
+			for(ResourceDto resource : resources) {
+				String name = resource.getResourceKey().getName();
+				if(wanted.contains(name) && !result.containsKey(name))
+					result.put(name, resource);
+			}
+			if(resources.size() < NAME_QUERY_PAGE_SIZE || result.size() == wanted.size())
+				return result;
+		}
+	}
+	
+	private String getCacheKey(String resourceKindKey, String name) {
+		return "" + resourceKindKey + ":" + name;
+	}
+	
+	/**
+	 * Converts the time series returned for a single resource to a ConsumptionHistory. The arrays
+	 * returned by vR Ops are used as they are, without copying.
+	 */
+	private ConsumptionHistory toHistory(ResourceStats stats) {
+		Map<String, MetricSeries> series = new HashMap<String, MetricSeries>();
+		for(Stat stat : stats.getStats().getStatList()) {
+			if(stat.getStatKey() != null && stat.getTimestamps() != null && stat.getData() != null)
+				series.put(stat.getStatKey().getKey(), new MetricSeries(stat.getTimestamps(), stat.getData()));
+		}
+		return new ConsumptionHistory(this.getSeries(series, CONSUMPTION_STAT_KEYS[0]), this.getSeries(series, CONSUMPTION_STAT_KEYS[1]),
+				this.getSeries(series, CONSUMPTION_STAT_KEYS[2]));
+	}
+	
+	private MetricSeries getSeries(Map<String, MetricSeries> series, String key) {
+		MetricSeries s = series.get(key);
+		return s != null ? s : MetricSeries.EMPTY;
+	}
+	
+	/**
+	 * Converts the stats returned for a single resource to a ResourceConsumption. Stats are matched on
+	 * their keys, since vR Ops doesn't return them in any particular order. Missing stats count as zero.
+	 */
+	private ResourceConsumption toConsumption(ResourceStats stats) {
+		double[] values = new double[CONSUMPTION_STAT_KEYS.length];
+		for(Stat stat : stats.getStats().getStatList()) {
+			if(stat.getStatKey() == null || stat.getData() == null || stat.getData().length == 0)
 				continue;
-			totCpu += thisMachine.getCpuMHz();
-			totMem += thisMachine.getMemoryKB();
-			totStorage = thisMachine.getStorageMB();
-			machines.put(child.getResourceKey().getName(), thisMachine);
+			String key = stat.getStatKey().getKey();
+			for(int i = 0; i < CONSUMPTION_STAT_KEYS.length; ++i) {
+				if(CONSUMPTION_STAT_KEYS[i].equals(key))
+					values[i] = stat.getData()[0];
+			}
+		}
+		return new ResourceConsumption(values[0], values[1], values[2]);
+	}
+	
+	private <T> T await(Future<T> future) {
+		try {
+			return future.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for vR Ops", e);
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IllegalStateException("Error calling vR Ops", cause);
 		}
-		return new AggregateResourceConsumption(new ResourceConsumption(totCpu, totMem, totStorage), machines);
 	}
 }
@@ -10,7 +10,9 @@ import java.util.Set;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.vmware.demo.bankpoc.client.AggregateResourceConsumption;
+import com.vmware.demo.bankpoc.client.InventoryMirror;
 import com.vmware.demo.bankpoc.client.MachineConfiguration;
+import com.vmware.demo.bankpoc.client.MachineDetails;
 import com.vmware.demo.bankpoc.client.POCClient;
 import com.vmware.demo.bankpoc.client.ResourceConsumption;
 import com.vmware.demo.bankpoc.client.VROPSClient;
@@ -135,9 +137,8 @@ public class Tester {
 		System.out.println("\n***** Get machine info *****");
 		Collection<CatalogResource> resources = client.getCatalogResources(machineName, 1);
 		CatalogResource resource = resources.iterator().next();
-		Map<String, Object> details = client.getMachineDetails(resource.getId());
-		Map<String, Object> data = (Map<String, Object>) details.get("data");
-		System.out.println(resource.getName() + ": " + data.get("MachineCPU") + "/" + data.get("MachineMemory"));
+		MachineDetails details = client.getMachineDetails(resource.getId(), MachineDetails.CPU, MachineDetails.MEMORY);
+		System.out.println(resource.getName() + ": " + details.get(MachineDetails.CPU) + "/" + details.get(MachineDetails.MEMORY));
 		System.out.println(details);
 	}
 	
@@ -187,6 +188,19 @@ public class Tester {
 		client.requestMigration(vCenterHost, tenant, businessGroup, username, password, sourceName, targetName, folder, cluster, storage, network, cpu, memory);
 	}
 	
+	private static void testInventoryMirror(POCClient client, String prefix) {
+		System.out.println("\n***** Inventory mirror *****");
+		InventoryMirror mirror = new InventoryMirror(client);
+		mirror.start();
+		try {
+			System.out.println("Mirrored " + mirror.size() + " resources");
+			for(CatalogResource resource : mirror.findByPrefix(prefix, 10))
+				System.out.println(resource.getId() + " " + resource.getName());
+		} finally {
+			mirror.shutdown();
+		}
+	}
+	
 	public static void main(String[] args) throws Exception {
 		System.out.println("***** Login *****");
 		POCClient client = new POCClient(args[0], args[1], args[2], args.length == 4 ? args[3] : null);
@@ -203,6 +217,7 @@ public class Tester {
 		//testGetMachineInfo(client, "dev-0091");	
 		//testMigrateStorage(client, "dev-0091", "vivaldi");
 		//testChangeProperties(client, "dev-0134", "bac_tag_ait1", "1113");
+		//testInventoryMirror(client, "dev-");
 		//VROPSClient vrops = client.createVROPSClient("https://vrops-01.rydin.nu/suite-api", "admin", args[2]);
 		//testGetResourceConsumption(vrops, "dev-0091");
 		//testGetGroupConsumption(vrops, "1234");
@@ -0,0 +1,145 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConsumptionSnapshotTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private static AggregateResourceConsumption group(String prefix, int machines) {
+		MachineConsumptionTable table = new MachineConsumptionTable();
+		double cpu = 0.0;
+		double memory = 0.0;
+		double storage = 0.0;
+		for(int i = 0; i < machines; ++i) {
+			table.put(prefix + "-" + i, i, i * 1024, i * 10);
+			cpu += i;
+			memory += i * 1024;
+			storage += i * 10;
+		}
+		return new AggregateResourceConsumption(new ResourceConsumption(cpu, memory, storage), table);
+	}
+	
+	private static Map<String, AggregateResourceConsumption> sample() {
+		Map<String, AggregateResourceConsumption> groups = new LinkedHashMap<String, AggregateResourceConsumption>();
+		groups.put("finance", group("fin", 100));
+		groups.put("empty", group("none", 0));
+		groups.put("r\u00e4ksm\u00f6rg\u00e5s", group("vm", 3));
+		return groups;
+	}
+	
+	@Test
+	public void roundTrips() throws IOException {
+		File file = folder.newFile("snapshot.bin");
+		Map<String, AggregateResourceConsumption> groups = sample();
+		ConsumptionSnapshot.write(file, groups);
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+		
+		ConsumptionSnapshot snapshot = ConsumptionSnapshot.open(file);
+		assertEquals(3, snapshot.getGroupCount());
+		assertEquals(103, snapshot.getRowCount());
+		Map<String, AggregateResourceConsumption> read = snapshot.toMap();
+		assertEquals(groups.keySet(), read.keySet());
+		for(Map.Entry<String, AggregateResourceConsumption> entry : groups.entrySet()) {
+			AggregateResourceConsumption expected = entry.getValue();
+			AggregateResourceConsumption actual = read.get(entry.getKey());
+			assertEquals(expected.getMachineCount(), actual.getMachineCount());
+			assertEquals(expected.getTotals().getCpuMHz(), actual.getTotals().getCpuMHz(), 0.0);
+			assertEquals(expected.getTotals().getMemoryKB(), actual.getTotals().getMemoryKB(), 0.0);
+			assertEquals(expected.getTotals().getStorageMB(), actual.getTotals().getStorageMB(), 0.0);
+			for(Map.Entry<String, ResourceConsumption> machine : expected.getMachines().entrySet()) {
+				ResourceConsumption rc = actual.getMachines().get(machine.getKey());
+				assertEquals(machine.getValue().getCpuMHz(), rc.getCpuMHz(), 0.0);
+				assertEquals(machine.getValue().getMemoryKB(), rc.getMemoryKB(), 0.0);
+				assertEquals(machine.getValue().getStorageMB(), rc.getStorageMB(), 0.0);
+			}
+		}
+		int group = snapshot.findGroup("finance");
+		assertEquals(0, group);
+		assertEquals("fin-7", snapshot.getMachineName(snapshot.getGroupFirstRow(group) + 7));
+		assertEquals(-1, snapshot.findGroup("missing"));
+	}
+	
+	@Test
+	public void replacesAnExistingSnapshot() throws IOException {
+		File file = folder.newFile("snapshot.bin");
+		ConsumptionSnapshot.write(file, sample());
+		ConsumptionSnapshot.write(file, Collections.singletonMap("only", group("x", 2)));
+		ConsumptionSnapshot snapshot = ConsumptionSnapshot.open(file);
+		assertEquals(1, snapshot.getGroupCount());
+		assertEquals("only", snapshot.getGroupName(0));
+	}
+	
+	@Test
+	public void rejectsCorruptHeaders() throws IOException {
+		File file = folder.newFile("snapshot.bin");
+		ConsumptionSnapshot.write(file, sample());
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(20);
+			raf.writeInt(Integer.MAX_VALUE); // Row count
+		} finally {
+			raf.close();
+		}
+		try {
+			ConsumptionSnapshot.open(file);
+			fail("Expected a corrupt snapshot to be rejected");
+		} catch(IOException e) {
+			// Expected
+		}
+	}
+	
+	@Test
+	public void rejectsCorruptNameIndexes() throws IOException {
+		File file = folder.newFile("snapshot.bin");
+		ConsumptionSnapshot.write(file, sample());
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(32); // Name of the first group
+			raf.writeInt(-1);
+		} finally {
+			raf.close();
+		}
+		try {
+			ConsumptionSnapshot.open(file);
+			fail("Expected a corrupt snapshot to be rejected");
+		} catch(IOException e) {
+			// Expected
+		}
+	}
+	
+	@Test(expected = IOException.class)
+	public void rejectsOtherFiles() throws IOException {
+		File file = folder.newFile("other.bin");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.write(new byte[64]);
+		} finally {
+			raf.close();
+		}
+		ConsumptionSnapshot.open(file);
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ExpiringCacheTest {
+	/**
+	 * A loader that counts its calls.
+	 */
+	private static class CountingLoader implements Callable<String> {
+		private final AtomicInteger calls = new AtomicInteger();
+		
+		private final String value;
+		
+		private final long delayMillis;
+		
+		public CountingLoader(String value, long delayMillis) {
+			this.value = value;
+			this.delayMillis = delayMillis;
+		}
+		
+		@Override
+		public String call() throws Exception {
+			calls.incrementAndGet();
+			if(delayMillis > 0)
+				Thread.sleep(delayMillis);
+			return value;
+		}
+	}
+	
+	@Test
+	public void loadsOnceAndServesHits() {
+		ExpiringCache<String, String> cache = new ExpiringCache<String, String>(60000, 10);
+		CountingLoader loader = new CountingLoader("value", 0);
+		assertEquals("value", cache.get("key", loader));
+		assertEquals("value", cache.get("key", loader));
+		assertEquals(1, loader.calls.get());
+		CacheStats stats = cache.getStats();
+		assertEquals(1, stats.getHitCount());
+		assertEquals(1, stats.getMissCount());
+		assertEquals(1, stats.getLoadCount());
+	}
+	
+	@Test
+	public void reloadsExpiredEntries() throws InterruptedException {
+		ExpiringCache<String, String> cache = new ExpiringCache<String, String>(20, 10);
+		CountingLoader loader = new CountingLoader("value", 0);
+		cache.get("key", loader);
+		Thread.sleep(50);
+		cache.get("key", loader);
+		assertEquals(2, loader.calls.get());
+	}
+	
+	@Test
+	public void cachesNullsWithTheirOwnTtl() throws InterruptedException {
+		ExpiringCache<String, String> cache = new ExpiringCache<String, String>(60000, 20, 0, 10, Long.MAX_VALUE, null);
+		CountingLoader loader = new CountingLoader(null, 0);
+		assertNull(cache.get("key", loader));
+		assertNull(cache.get("key", loader));
+		assertEquals(1, loader.calls.get());
+		Thread.sleep(50);
+		cache.get("key", loader);
+		assertEquals(2, loader.calls.get());
+	}
+	
+	@Test
+	public void evictsLeastRecentlyUsed() {
+		ExpiringCache<String, String> cache = new ExpiringCache<String, String>(60000, 2);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		assertEquals("1", cache.get("a", new CountingLoader("x", 0)));
+		cache.put("c", "3");
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getStats().getEvictionCount());
+		
+		// "b" was the least recently used, so "a" and "c" are still there
+		//
+		CountingLoader loader = new CountingLoader("x", 0);
+		assertEquals("1", cache.get("a", loader));
+		assertEquals("3", cache.get("c", loader));
+		assertEquals(0, loader.calls.get());
+	}
+	
+	@Test
+	public void evictsToStayBelowMaxWeight() {
+		ExpiringCache<String, String> cache = new ExpiringCache<String, String>(60000, 60000, 0, 100, 10, 
+				new ExpiringCache.Weigher<String, String>() {
+					@Override
+					public int weigh(String key, String value) {
+						return value.length();
+					}
+				});
+		cache.put("a", "1234");
+		cache.put("b", "1234");
+		assertEquals(8, cache.getWeight());
+		cache.put("c", "1234");
+		assertEquals(8, cache.getWeight());
+		assertEquals(2, cache.size());
+		assertTrue(!cache.keys().contains("a"));
+	}
+	
+	@Test
+	public void doesNotCacheFailedLoads() {
+		ExpiringCache<String, String> cache = new ExpiringCache<String, String>(60000, 10);
+		try {
+			cache.get("key", new Callable<String>() {
+				@Override
+				public String call() {
+					throw new IllegalStateException("boom");
+				}
+			});
+			fail("Expected the load to fail");
+		} catch(IllegalStateException e) {
+			assertEquals("boom", e.getMessage());
+		}
+		assertEquals(1, cache.getStats().getLoadFailureCount());
+		assertEquals("value", cache.get("key", new CountingLoader("value", 0)));
+	}
+	
+	@Test
+	public void collapsesConcurrentMisses() throws InterruptedException {
+		final ExpiringCache<String, String> cache = new ExpiringCache<String, String>(60000, 10);
+		final CountingLoader loader = new CountingLoader("value", 20);
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicInteger wrong = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int i = 0; i < 16; ++i) {
+			Thread t = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for(int j = 0; j < 100; ++j) {
+							if(!"value".equals(cache.get("key", loader)))
+								wrong.incrementAndGet();
+						}
+					} catch(InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+			t.start();
+			threads.add(t);
+		}
+		start.countDown();
+		for(Thread t : threads)
+			t.join();
+		assertEquals(0, wrong.get());
+		assertEquals(1, loader.calls.get());
+	}
+}
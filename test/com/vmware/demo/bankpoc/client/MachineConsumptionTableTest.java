@@ -0,0 +1,136 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class MachineConsumptionTableTest {
+	@Test
+	public void looksUpMachinesByName() {
+		MachineConsumptionTable table = new MachineConsumptionTable(4);
+		for(int i = 0; i < 1000; ++i)
+			table.put("vm-" + i, i, i * 2, i * 3);
+		assertEquals(1000, table.size());
+		for(int i = 0; i < 1000; ++i) {
+			int row = table.indexOf("vm-" + i);
+			assertEquals(i, row);
+			assertEquals("vm-" + i, table.getName(row));
+			assertEquals(i, table.getCpuMHz(row), 0.0);
+			assertEquals(i * 2, table.getMemoryKB(row), 0.0);
+			assertEquals(i * 3, table.getStorageMB(row), 0.0);
+		}
+		assertEquals(-1, table.indexOf("vm-1000"));
+		assertEquals(-1, table.indexOf(null));
+	}
+	
+	@Test
+	public void replacesRepeatedNamesAndKeepsTotalsInStep() {
+		MachineConsumptionTable table = new MachineConsumptionTable();
+		table.put("a", 1, 10, 100);
+		table.put("b", 2, 20, 200);
+		table.put("a", 5, 50, 500);
+		assertEquals(2, table.size());
+		assertEquals(5, table.getCpuMHz(table.indexOf("a")), 0.0);
+		ResourceConsumption totals = table.getTotals();
+		assertEquals(7, totals.getCpuMHz(), 0.0);
+		assertEquals(70, totals.getMemoryKB(), 0.0);
+		assertEquals(700, totals.getStorageMB(), 0.0);
+	}
+	
+	@Test
+	public void addsUpRepeatedNames() {
+		MachineConsumptionTable table = new MachineConsumptionTable(4);
+		table.add("a", 1, 10, 100);
+		table.add("b", 2, 20, 200);
+		table.add("a", 5, 50, 500);
+		for(int i = 0; i < 100; ++i)
+			table.add("c", 1, 1, 1);
+		assertEquals(3, table.size());
+		assertEquals(6, table.getCpuMHz(table.indexOf("a")), 0.0);
+		assertEquals(60, table.getMemoryKB(table.indexOf("a")), 0.0);
+		assertEquals(600, table.getStorageMB(table.indexOf("a")), 0.0);
+		assertEquals(100, table.getCpuMHz(table.indexOf("c")), 0.0);
+		ResourceConsumption totals = table.getTotals();
+		assertEquals(108, totals.getCpuMHz(), 0.0);
+		assertEquals(180, totals.getMemoryKB(), 0.0);
+		assertEquals(900, totals.getStorageMB(), 0.0);
+	}
+	
+	@Test
+	public void copiesAreIndependent() {
+		MachineConsumptionTable table = new MachineConsumptionTable(4);
+		table.put("a", 1, 10, 100);
+		table.put("b", 2, 20, 200);
+		MachineConsumptionTable copy = table.copy();
+		table.put("a", 5, 50, 500);
+		for(int i = 0; i < 100; ++i)
+			copy.put("vm-" + i, 1, 1, 1);
+		assertEquals(2, table.size());
+		assertEquals(102, copy.size());
+		assertEquals(5, table.getCpuMHz(table.indexOf("a")), 0.0);
+		assertEquals(1, copy.getCpuMHz(copy.indexOf("a")), 0.0);
+		assertEquals(-1, table.indexOf("vm-0"));
+		assertEquals(99, copy.indexOf("vm-97"));
+		assertEquals(7, table.getTotals().getCpuMHz(), 0.0);
+		assertEquals(103, copy.getTotals().getCpuMHz(), 0.0);
+	}
+	
+	@Test
+	public void visitsRowsInInsertionOrder() {
+		MachineConsumptionTable table = new MachineConsumptionTable();
+		table.put("c", 3, 0, 0);
+		table.put("a", 1, 0, 0);
+		table.put("b", 2, 0, 0);
+		final List<String> names = new ArrayList<String>();
+		table.visit(new MachineConsumptionTable.Visitor() {
+			@Override
+			public void visit(String name, double cpuMHz, double memoryKB, double storageMB) {
+				names.add(name);
+			}
+		});
+		assertEquals("c", names.get(0));
+		assertEquals("a", names.get(1));
+		assertEquals("b", names.get(2));
+	}
+	
+	@Test
+	public void providesAMapView() {
+		MachineConsumptionTable table = new MachineConsumptionTable();
+		table.put("a", 1, 2, 3);
+		table.put("b", 4, 5, 6);
+		Map<String, ResourceConsumption> map = table.asMap();
+		assertEquals(2, map.size());
+		assertTrue(map.containsKey("a"));
+		assertFalse(map.containsKey("c"));
+		assertNull(map.get("c"));
+		assertEquals(5, map.get("b").getMemoryKB(), 0.0);
+		int count = 0;
+		for(Map.Entry<String, ResourceConsumption> entry : map.entrySet()) {
+			assertEquals(table.getCpuMHz(table.indexOf(entry.getKey())), entry.getValue().getCpuMHz(), 0.0);
+			++count;
+		}
+		assertEquals(2, count);
+	}
+	
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void rejectsRowsOutOfRange() {
+		new MachineConsumptionTable().getName(0);
+	}
+}
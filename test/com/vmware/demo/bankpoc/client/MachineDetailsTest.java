@@ -0,0 +1,78 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class MachineDetailsTest {
+	private static final String VIEW = "{"
+			+ "\"links\": [{\"rel\": \"self\", \"href\": \"https://vra/x\"}],"
+			+ "\"resourceId\": \"4711\","
+			+ "\"name\": \"dev-0091\","
+			+ "\"data\": {"
+			+ "  \"MachineCPU\": 2,"
+			+ "  \"MachineMemory\": 4096,"
+			+ "  \"MachineStorage\": 40.5,"
+			+ "  \"MachineStatus\": \"On\","
+			+ "  \"IsComponent\": true,"
+			+ "  \"MachineReservationName\": null,"
+			+ "  \"DISK_VOLUMES\": [{\"data\": {\"MachineCPU\": 99}}],"
+			+ "  \"NETWORK_LIST\": {\"MachineMemory\": 1}"
+			+ "}";
+	
+	@Test
+	public void picksTheRequestedFields() throws IOException {
+		MachineDetails details = MachineDetails.parse(VIEW + "}", MachineDetails.CPU, MachineDetails.MEMORY, 
+				MachineDetails.STATUS, MachineDetails.STORAGE, MachineDetails.RESERVATION);
+		assertEquals("4711", details.getResourceId());
+		assertEquals("dev-0091", details.getName());
+		assertEquals(2, details.getInt(MachineDetails.CPU, -1));
+		assertEquals(4096, details.getInt(MachineDetails.MEMORY, -1));
+		assertEquals(40.5, details.getDouble(MachineDetails.STORAGE, -1), 0.0);
+		assertEquals("On", details.getString(MachineDetails.STATUS));
+		assertFalse(details.getData().containsKey(MachineDetails.RESERVATION));
+		assertEquals(4, details.getData().size());
+	}
+	
+	@Test
+	public void skipsFieldsThatWerentRequested() throws IOException {
+		MachineDetails details = MachineDetails.parse(VIEW + "}", MachineDetails.CPU);
+		assertEquals(1, details.getData().size());
+		assertNull(details.get(MachineDetails.MEMORY));
+		assertNull(details.get("IsComponent"));
+	}
+	
+	@Test
+	public void stopsOnceDataResourceIdAndNameHaveBeenSeen() throws IOException {
+		// Anything after the data section is never read
+		//
+		MachineDetails details = MachineDetails.parse(VIEW + ", \"trailing\": [not json", MachineDetails.CPU);
+		assertEquals(2, details.getInt(MachineDetails.CPU, -1));
+	}
+	
+	@Test
+	public void fallsBackToDefaultsForMissingOrNonNumericValues() throws IOException {
+		MachineDetails details = MachineDetails.parse(VIEW + "}", MachineDetails.STATUS);
+		assertEquals(-1, details.getInt(MachineDetails.STATUS, -1));
+		assertEquals(-1, details.getInt(MachineDetails.CPU, -1));
+	}
+	
+	@Test(expected = IOException.class)
+	public void rejectsNonObjects() throws IOException {
+		MachineDetails.parse("[1, 2, 3]", MachineDetails.CPU);
+	}
+}
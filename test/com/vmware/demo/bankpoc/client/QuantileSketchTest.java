@@ -0,0 +1,76 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class QuantileSketchTest {
+	private static void assertWithin(double expected, double actual, double accuracy) {
+		assertTrue("Expected " + expected + " got " + actual, Math.abs(actual - expected) <= expected * accuracy);
+	}
+	
+	@Test
+	public void estimatesQuantilesWithinTheAccuracy() {
+		QuantileSketch sketch = new QuantileSketch(0.01);
+		for(int i = 1; i <= 10000; ++i)
+			sketch.add(i);
+		assertEquals(10000, sketch.getCount());
+		assertEquals(1.0, sketch.getMin(), 0.0);
+		assertEquals(10000.0, sketch.getMax(), 0.0);
+		assertWithin(5000, sketch.getQuantile(0.5), 0.01);
+		assertWithin(9500, sketch.getQuantile(0.95), 0.01);
+		assertWithin(9900, sketch.getQuantile(0.99), 0.01);
+		assertEquals(1.0, sketch.getQuantile(0.0), 0.0);
+		assertWithin(10000, sketch.getQuantile(1.0), 0.01);
+	}
+	
+	@Test
+	public void countsSmallAndNegativeValuesAsZero() {
+		QuantileSketch sketch = new QuantileSketch();
+		sketch.add(0);
+		sketch.add(-5);
+		sketch.add(0);
+		sketch.add(100);
+		assertEquals(-5.0, sketch.getMin(), 0.0);
+		assertEquals(0.0, sketch.getQuantile(0.5), 0.0);
+		assertEquals(100.0, sketch.getQuantile(1.0), 0.0);
+	}
+	
+	@Test
+	public void returnsNaNWhenEmpty() {
+		assertTrue(Double.isNaN(new QuantileSketch().getQuantile(0.5)));
+	}
+	
+	@Test
+	public void mergeMatchesASingleSketch() {
+		QuantileSketch all = new QuantileSketch();
+		QuantileSketch low = new QuantileSketch();
+		QuantileSketch high = new QuantileSketch();
+		for(int i = 1; i <= 1000; ++i) {
+			all.add(i);
+			(i <= 500 ? low : high).add(i);
+		}
+		low.merge(high);
+		assertEquals(all.getCount(), low.getCount());
+		assertEquals(all.getMin(), low.getMin(), 0.0);
+		assertEquals(all.getMax(), low.getMax(), 0.0);
+		for(double q = 0.0; q <= 1.0; q += 0.05)
+			assertEquals(all.getQuantile(q), low.getQuantile(q), 0.0);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void refusesToMergeDifferentAccuracy() {
+		new QuantileSketch(0.01).merge(new QuantileSketch(0.02));
+	}
+}
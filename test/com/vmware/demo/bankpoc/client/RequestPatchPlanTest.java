@@ -0,0 +1,116 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class RequestPatchPlanTest {
+	/**
+	 * Builds request data shaped like a reconfigure template.
+	 */
+	private static Map<String, Object> request() {
+		Map<String, Object> disk = new HashMap<String, Object>();
+		disk.put("size", 10);
+		Map<String, Object> diskEntry = new HashMap<String, Object>();
+		diskEntry.put("data", disk);
+		List<Object> disks = new ArrayList<Object>();
+		disks.add(diskEntry);
+		Map<String, Object> data = new HashMap<String, Object>();
+		data.put("cpu", 1);
+		data.put("memory", 1024);
+		data.put("disks", disks);
+		return data;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static Object diskSize(Map<String, Object> data) {
+		List<Object> disks = (List<Object>) data.get("disks");
+		return ((Map<String, Object>) ((Map<String, Object>) disks.get(0)).get("data")).get("size");
+	}
+	
+	@Test
+	public void appliesArgumentsAndConstants() {
+		RequestPatchPlan.Builder builder = new RequestPatchPlan.Builder();
+		int memory = builder.bind(RequestPatchPlan.path("memory"));
+		int disk = builder.bind(RequestPatchPlan.path("disks", 0, "data", "size"));
+		int cpu = builder.bind(RequestPatchPlan.path("cpu"));
+		builder.set(RequestPatchPlan.path("requestor"), "me");
+		RequestPatchPlan plan = builder.compile(request());
+		assertEquals(3, plan.getArgCount());
+		
+		// Apply to another request with the same structure
+		//
+		Map<String, Object> data = request();
+		Object[] args = new Object[plan.getArgCount()];
+		args[cpu] = 4;
+		args[memory] = 8192;
+		args[disk] = 100;
+		plan.apply(data, args);
+		assertEquals(4, data.get("cpu"));
+		assertEquals(8192, data.get("memory"));
+		assertEquals(100, diskSize(data));
+		assertEquals("me", data.get("requestor"));
+	}
+	
+	@Test
+	public void mergesMapArguments() {
+		RequestPatchPlan.Builder builder = new RequestPatchPlan.Builder();
+		builder.bindAll(RequestPatchPlan.path());
+		RequestPatchPlan plan = builder.compile(request());
+		Map<String, Object> data = request();
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put("ou", "finance");
+		plan.apply(data, properties);
+		assertEquals("finance", data.get("ou"));
+		plan.apply(data, (Object) null);
+		assertEquals(1, data.get("cpu"));
+	}
+	
+	@Test
+	public void failsToCompileMissingPaths() {
+		RequestPatchPlan.Builder builder = new RequestPatchPlan.Builder();
+		builder.bind(RequestPatchPlan.path("disks", 3, "data", "size"));
+		try {
+			builder.compile(request());
+			fail("Expected compilation to fail");
+		} catch(IllegalStateException e) {
+			assertEquals("Element disks[3] not found in template", e.getMessage());
+		}
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void failsToApplyToADifferentStructure() {
+		RequestPatchPlan.Builder builder = new RequestPatchPlan.Builder();
+		builder.bind(RequestPatchPlan.path("disks", 0, "data", "size"));
+		RequestPatchPlan plan = builder.compile(request());
+		plan.apply(new HashMap<String, Object>(), 1);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsTheWrongNumberOfArguments() {
+		RequestPatchPlan.Builder builder = new RequestPatchPlan.Builder();
+		builder.bind(RequestPatchPlan.path("cpu"));
+		builder.compile(request()).apply(request());
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsPathsEndingWithAnIndex() {
+		new RequestPatchPlan.Builder().bind(RequestPatchPlan.path("disks", 0));
+	}
+}
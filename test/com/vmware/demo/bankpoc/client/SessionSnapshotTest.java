@@ -0,0 +1,107 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SessionSnapshotTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private static final char[] PASSPHRASE = "secret".toCharArray();
+	
+	private static Map<String, Object> sample() {
+		Map<String, Object> content = new HashMap<String, Object>();
+		content.put("token", "MTQ1ODY3");
+		content.put("expiresAt", 1500000000000L);
+		content.put("endpoints", Collections.singletonMap("identity", "https://vra/identity/api/"));
+		return content;
+	}
+	
+	@Test
+	public void roundTrips() throws IOException {
+		File file = new File(folder.getRoot(), "session.bin");
+		SessionSnapshot.write(file, PASSPHRASE, sample());
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+		
+		Map<?, ?> read = SessionSnapshot.read(file, PASSPHRASE);
+		assertEquals("MTQ1ODY3", read.get("token"));
+		assertEquals(1500000000000L, ((Number) read.get("expiresAt")).longValue());
+		assertEquals(Collections.singletonMap("identity", "https://vra/identity/api/"), read.get("endpoints"));
+	}
+	
+	@Test
+	public void isEncrypted() throws IOException {
+		File file = new File(folder.getRoot(), "session.bin");
+		SessionSnapshot.write(file, PASSPHRASE, sample());
+		byte[] content = new byte[(int) file.length()];
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			raf.readFully(content);
+		} finally {
+			raf.close();
+		}
+		assertEquals(-1, new String(content, "ISO-8859-1").indexOf("MTQ1ODY3"));
+	}
+	
+	@Test
+	public void ignoresMissingFile() throws IOException {
+		assertNull(SessionSnapshot.read(new File(folder.getRoot(), "missing.bin"), PASSPHRASE));
+	}
+	
+	@Test
+	public void ignoresWrongPassphrase() throws IOException {
+		File file = new File(folder.getRoot(), "session.bin");
+		SessionSnapshot.write(file, PASSPHRASE, sample());
+		assertNull(SessionSnapshot.read(file, "wrong".toCharArray()));
+	}
+	
+	@Test
+	public void ignoresTamperedFile() throws IOException {
+		File file = new File(folder.getRoot(), "session.bin");
+		SessionSnapshot.write(file, PASSPHRASE, sample());
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(raf.length() - 1);
+			int last = raf.read();
+			raf.seek(raf.length() - 1);
+			raf.write(last ^ 1);
+		} finally {
+			raf.close();
+		}
+		assertNull(SessionSnapshot.read(file, PASSPHRASE));
+	}
+	
+	@Test
+	public void ignoresOtherFiles() throws IOException {
+		File file = folder.newFile("other.bin");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.write(new byte[64]);
+		} finally {
+			raf.close();
+		}
+		assertNull(SessionSnapshot.read(file, PASSPHRASE));
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+	@Test
+	public void startsFull() {
+		TokenBucket bucket = new TokenBucket(1, 3);
+		assertEquals(0, bucket.tryAcquire());
+		assertEquals(0, bucket.tryAcquire());
+		assertEquals(0, bucket.tryAcquire());
+		assertTrue(bucket.tryAcquire() > 0);
+	}
+	
+	@Test
+	public void reportsTimeUntilNextToken() {
+		TokenBucket bucket = new TokenBucket(10, 1);
+		assertEquals(0, bucket.tryAcquire());
+		long wait = bucket.tryAcquire();
+		assertTrue("Wait was " + wait, wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(100));
+	}
+	
+	@Test
+	public void refillsAtTheConfiguredRate() throws InterruptedException {
+		TokenBucket bucket = new TokenBucket(50, 1);
+		assertEquals(0, bucket.tryAcquire());
+		Thread.sleep(40);
+		assertEquals(0, bucket.tryAcquire());
+	}
+	
+	@Test
+	public void acquireWaitsForATokenWhenEmpty() throws InterruptedException {
+		TokenBucket bucket = new TokenBucket(20, 1);
+		bucket.acquire();
+		long start = System.nanoTime();
+		bucket.acquire();
+		bucket.acquire();
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue("Elapsed " + elapsed + "ms", elapsed >= 90);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNonPositiveRate() {
+		new TokenBucket(0, 1);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsEmptyBurst() {
+		new TokenBucket(1, 0);
+	}
+}
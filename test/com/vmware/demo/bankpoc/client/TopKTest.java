@@ -0,0 +1,75 @@
+/*
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND ANY EXPRESSED OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, 
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL 
+ * THE REGENTS OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR 
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF 
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, 
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.vmware.demo.bankpoc.client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TopKTest {
+	@Test
+	public void keepsTheLargestValuesLargestFirst() {
+		TopK top = new TopK(3);
+		double[] values = { 5, 1, 9, 3, 7, 2, 8 };
+		for(int i = 0; i < values.length; ++i)
+			top.offer("vm-" + (int) values[i], values[i]);
+		List<Map.Entry<String, Double>> result = top.getTop();
+		assertEquals(3, result.size());
+		assertEquals("vm-9", result.get(0).getKey());
+		assertEquals(9.0, result.get(0).getValue(), 0.0);
+		assertEquals("vm-8", result.get(1).getKey());
+		assertEquals("vm-7", result.get(2).getKey());
+	}
+	
+	@Test
+	public void keepsEverythingWhenFewerThanK() {
+		TopK top = new TopK(5);
+		top.offer("a", 1);
+		top.offer("b", 2);
+		List<Map.Entry<String, Double>> result = top.getTop();
+		assertEquals(2, top.size());
+		assertEquals("b", result.get(0).getKey());
+		assertEquals("a", result.get(1).getKey());
+	}
+	
+	@Test
+	public void mergesWithAnotherInstance() {
+		TopK a = new TopK(2);
+		TopK b = new TopK(2);
+		a.offer("a1", 1);
+		a.offer("a10", 10);
+		b.offer("b5", 5);
+		b.offer("b20", 20);
+		a.merge(b);
+		List<Map.Entry<String, Double>> result = a.getTop();
+		assertEquals(2, result.size());
+		assertEquals("b20", result.get(0).getKey());
+		assertEquals("a10", result.get(1).getKey());
+	}
+	
+	@Test
+	public void handlesManyValues() {
+		TopK top = new TopK(10);
+		for(int i = 0; i < 10000; ++i)
+			top.offer("vm-" + i, (i * 7919) % 10000);
+		List<Map.Entry<String, Double>> result = top.getTop();
+		for(int i = 0; i < 10; ++i)
+			assertEquals(9999 - i, result.get(i).getValue(), 0.0);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsZeroK() {
+		new TopK(0);
+	}
+}